@@ -0,0 +1,25 @@
+package botcommons.benchmarks;
+
+import botcommons.menu.types.PageMenu;
+import botcommons.menu.types.PageSource;
+import net.dv8tion.jda.api.EmbedBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BenchmarkMenu extends PageMenu {
+	// The pages never change, so one source is returned and its rendered pages are reused
+	private final PageSource source;
+
+	public BenchmarkMenu(int pages) {
+		List<EmbedBuilder> builders = new ArrayList<>();
+		for (int i = 0; i < pages; i++)
+			builders.add(new EmbedBuilder().setTitle("Page " + i).setDescription("Benchmark page content " + i));
+		this.source = PageSource.of(builders);
+	}
+
+	@Override
+	public PageSource getPageSource() {
+		return source;
+	}
+}
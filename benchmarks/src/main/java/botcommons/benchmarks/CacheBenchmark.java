@@ -0,0 +1,69 @@
+package botcommons.benchmarks;
+
+import botcommons.cache.CacheManager;
+import botcommons.harness.Harness;
+import botcommons.harness.TraceEvent;
+import botcommons.utilities.JsonUtils;
+import botcommons.utilities.StringUtilities;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caching received messages and persisting the message cache, with many messages already cached. Files are
+ * written to {@code benchmark-assets/cache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+	private static final long GUILD = 2, CHANNEL = 5;
+
+	@Param({"1000", "100000"})
+	public int messages;
+
+	private Harness harness;
+	private CacheManager listener;
+	private TraceEvent message;
+
+	@Setup
+	public void setup() {
+		StringUtilities.botName = "benchmark";
+		harness = Harness.create(1);
+		CacheManager.init(harness.getJDA(), false, false, true, true, false);
+		listener = harness.getJDA().getRegisteredListeners().stream()
+				.filter(CacheManager.class::isInstance)
+				.map(CacheManager.class::cast)
+				.findFirst().orElseThrow();
+		message = TraceEvent.message(1, GUILD, CHANNEL, "hello");
+		fill();
+	}
+
+	// Keeps the cache at the configured size while onMessageReceived keeps adding to it
+	@Setup(Level.Iteration)
+	public void fill() {
+		CacheManager.channelMessageCache.clear();
+		CacheManager.userMessageCache.clear();
+		for (int i = 0; i < messages; i++)
+			listener.onMessageReceived((MessageReceivedEvent) harness.createEvent(message));
+	}
+
+	@TearDown
+	public void tearDown() {
+		harness.shutdown();
+	}
+
+	@Benchmark
+	public void onMessageReceived() {
+		listener.onMessageReceived((MessageReceivedEvent) harness.createEvent(message));
+	}
+
+	@Benchmark
+	public void updateCache() {
+		JsonUtils.updateCache(CacheManager.channelMessageCache, "channel_message_cache");
+	}
+}
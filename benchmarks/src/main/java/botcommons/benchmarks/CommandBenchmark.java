@@ -0,0 +1,109 @@
+package botcommons.benchmarks;
+
+import botcommons.commands.CommandInfo;
+import botcommons.commands.CommandInvoker;
+import botcommons.commands.CommandManager;
+import botcommons.commands.GenericCommandEvent;
+import botcommons.harness.Harness;
+import botcommons.harness.TraceEvent;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command lookup, argument decoding and full slash command dispatch. {@link #createEvent()} is the cost of
+ * synthesizing the event that {@link #dispatch()} includes. {@link #reflective()} and {@link #compiled()} call a
+ * command that does not reply on the same event, once through {@link Method#invoke} as dispatch did before
+ * commands were compiled, and once through the compiled {@link CommandInvoker}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+	// The argument types the reflective dispatch asked for, by option type
+	private static final Map<OptionType, Class<?>> TYPES = Map.of(OptionType.INTEGER, Integer.class, OptionType.STRING, String.class);
+
+	/** Registered filler commands */
+	@Param({"0", "50", "200"})
+	public int commands;
+
+	private Harness harness;
+	private EventListener listener;
+	private TraceEvent ping;
+	private GenericCommandEvent event;
+	private GenericCommandEvent sum;
+	private CommandInfo sumInfo;
+	private String lookup;
+
+	@Setup
+	public void setup() {
+		harness = Harness.create(1);
+		CommandManager.init(harness.getJDA());
+		CommandManager.addCommands(DispatchCommands.class);
+		if (commands > 0)
+			CommandManager.addCommands(FillerCommands.generate(commands));
+		listener = (EventListener) harness.getJDA().getRegisteredListeners().getFirst();
+
+		ping = TraceEvent.slash("ping", 1, 2, Map.of("count", 5, "name", "benchmark"));
+		event = GenericCommandEvent.of((SlashCommandInteractionEvent) harness.createEvent(ping));
+		sum = GenericCommandEvent.of((SlashCommandInteractionEvent) harness.createEvent(
+				TraceEvent.slash("sum", 1, 2, Map.of("count", 5, "name", "benchmark"))));
+		sumInfo = CommandManager.getCommandInfo("sum");
+		lookup = commands == 0 ? "ping" : "filler-" + (commands - 1);
+	}
+
+	@TearDown
+	public void tearDown() {
+		harness.shutdown();
+	}
+
+	@Benchmark
+	public Method getCommand() {
+		return CommandManager.getCommand(lookup);
+	}
+
+	@Benchmark
+	public GenericEvent createEvent() {
+		return harness.createEvent(ping);
+	}
+
+	@Benchmark
+	public void dispatch() {
+		listener.onEvent(harness.createEvent(ping));
+	}
+
+	@Benchmark
+	public int getArgInt() {
+		return event.getArg("count", int.class);
+	}
+
+	@Benchmark
+	public String getArgString() {
+		return event.getArg("name", String.class);
+	}
+
+	@Benchmark
+	public void reflective() throws ReflectiveOperationException {
+		List<Object> args = new ArrayList<>();
+		args.add(sum);
+		for (CommandInfo.Option option : sumInfo.args)
+			args.add(sum.getArg(option.getName(), TYPES.get(option.getType())));
+		sumInfo.method.invoke(null, args.toArray());
+	}
+
+	@Benchmark
+	public void compiled() throws Throwable {
+		sumInfo.invoker.invoke(sum);
+	}
+}
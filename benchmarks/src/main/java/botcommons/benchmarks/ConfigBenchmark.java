@@ -0,0 +1,55 @@
+package botcommons.benchmarks;
+
+import botcommons.config.ConfigManager;
+import botcommons.harness.Harness;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading guild config values with many guilds configured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigBenchmark {
+	@Param({"10", "10000"})
+	public int guilds;
+
+	private Harness harness;
+	private ConfigManager manager;
+	private ConfigManager.Config config;
+	private String guild;
+
+	@Setup
+	public void setup() {
+		harness = Harness.create(1);
+		manager = new ConfigManager("benchmark", harness.getJDA());
+		for (int i = 0; i < guilds; i++) {
+			ConfigManager.Config guildConfig = new ConfigManager.Config();
+			guildConfig.put("prefix", "!");
+			guildConfig.put("volume", 50);
+			manager.getConfigs().put(String.valueOf(i), guildConfig);
+		}
+		guild = String.valueOf(guilds - 1);
+		config = manager.getConfigs().get(guild);
+	}
+
+	@TearDown
+	public void tearDown() {
+		harness.shutdown();
+	}
+
+	@Benchmark
+	public String get() {
+		return config.get("prefix", String.class);
+	}
+
+	@Benchmark
+	public Integer getValue() {
+		return manager.getValue(guild, "volume", Integer.class);
+	}
+}
@@ -0,0 +1,26 @@
+package botcommons.benchmarks;
+
+import botcommons.commands.Command;
+import botcommons.commands.CommandHolder;
+import botcommons.commands.GenericCommandEvent;
+import botcommons.commands.Param;
+
+@CommandHolder
+public class DispatchCommands {
+	/** Written by {@link #sum}, so the call cannot be optimized away */
+	public static volatile int result;
+
+	@Command(name = "ping", help = "Replies with the name repeated count times")
+	public static void ping(GenericCommandEvent event,
+							@Param(description = "How often to repeat the name") int count,
+							@Param(description = "The name to repeat") String name) {
+		event.reply(count + " " + name).finish();
+	}
+
+	@Command(name = "sum", help = "Adds the length of the name to count, without replying")
+	public static void sum(GenericCommandEvent event,
+						   @Param(description = "The number to add to") int count,
+						   @Param(description = "The name to measure") String name) {
+		result = count + name.length();
+	}
+}
@@ -0,0 +1,58 @@
+package botcommons.benchmarks;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Filler commands, so lookups run against a realistically sized registry. The holder is generated and compiled
+ * when a benchmark is set up, since commands are declared through annotations and cannot be created otherwise.
+ */
+final class FillerCommands {
+	private static final String PACKAGE = "botcommons.benchmarks.generated";
+
+	private FillerCommands() {}
+
+	/**
+	 * @return A holder with commands named {@code filler-0} to {@code filler-<count - 1>}
+	 */
+	static Class<?> generate(int count) {
+		String name = "FillerCommands" + count;
+		StringBuilder source = new StringBuilder()
+				.append("package ").append(PACKAGE).append(";\n\n")
+				.append("@botcommons.commands.CommandHolder\n")
+				.append("public class ").append(name).append(" {\n");
+		for (int i = 0; i < count; i++) {
+			source.append("\t@botcommons.commands.Command(name = \"filler-").append(i).append("\", help = \"Filler command\")\n")
+					.append("\tpublic static void filler").append(i).append("(botcommons.commands.GenericCommandEvent event) {\n")
+					.append("\t\tevent.reply(\"filler\").finish();\n")
+					.append("\t}\n\n");
+		}
+		source.append("}\n");
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null)
+			throw new IllegalStateException("Generating filler commands needs a JDK");
+		try {
+			Path directory = Files.createTempDirectory("filler-commands");
+			Path file = directory.resolve(PACKAGE.replace('.', '/')).resolve(name + ".java");
+			Files.createDirectories(file.getParent());
+			Files.writeString(file, source, StandardCharsets.UTF_8);
+			ByteArrayOutputStream errors = new ByteArrayOutputStream();
+			int result = compiler.run(null, null, errors, "-proc:none", "-d", directory.toString(),
+					"-cp", System.getProperty("java.class.path"), file.toString());
+			if (result != 0)
+				throw new IllegalStateException("Could not compile filler commands:\n" + errors.toString(StandardCharsets.UTF_8));
+			ClassLoader loader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, FillerCommands.class.getClassLoader());
+			return Class.forName(PACKAGE + "." + name, true, loader);
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("Could not generate filler commands", e);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package botcommons.benchmarks;
+
+import botcommons.harness.Harness;
+import botcommons.harness.TraceEvent;
+import botcommons.menu.MenuManager;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing a button press to its menu among many open menus, and rendering a page menu.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MenuBenchmark {
+	private static final long FIRST_MESSAGE = 1_000;
+
+	@Param({"10", "1000"})
+	public int menus;
+
+	@Param({"10", "100"})
+	public int pages;
+
+	private Harness harness;
+	private TraceEvent press;
+	private BenchmarkMenu menu;
+
+	@Setup
+	public void setup() {
+		harness = Harness.create(1);
+		MenuManager.init(harness.getJDA());
+		for (int i = 0; i < menus; i++) {
+			menu = new BenchmarkMenu(pages);
+			menu.setMessageId(String.valueOf(FIRST_MESSAGE + i));
+			MenuManager.registerMenuWithId("menu-" + i, menu);
+		}
+		// The most recently opened menu, i.e. the last one a linear scan finds
+		press = TraceEvent.button(1, 2, FIRST_MESSAGE + menus - 1, MenuManager.componentId("menu-" + (menus - 1), "right"));
+	}
+
+	@TearDown
+	public void tearDown() {
+		harness.shutdown();
+	}
+
+	@Benchmark
+	public void onButtonInteraction() {
+		MenuManager.instance.onButtonInteraction((ButtonInteractionEvent) harness.createEvent(press));
+	}
+
+	@Benchmark
+	public List<MessageEmbed> getPages() {
+		return menu.getPages();
+	}
+}
@@ -0,0 +1,498 @@
+package botcommons.harness;
+
+import botcommons.commands.LatencyHistogram;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.SelfUser;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.channel.ChannelType;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.entities.channel.unions.GuildChannelUnion;
+import net.dv8tion.jda.api.entities.channel.unions.GuildMessageChannelUnion;
+import net.dv8tion.jda.api.entities.channel.unions.MessageChannelUnion;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.command.MessageContextInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.command.UserContextInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.events.session.ReadyEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import net.dv8tion.jda.api.interactions.AutoCompleteQuery;
+import net.dv8tion.jda.api.interactions.InteractionType;
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.interactions.commands.CommandAutoCompleteInteraction;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.dv8tion.jda.api.interactions.commands.SlashCommandInteraction;
+import net.dv8tion.jda.api.interactions.commands.context.MessageContextInteraction;
+import net.dv8tion.jda.api.interactions.commands.context.UserContextInteraction;
+import net.dv8tion.jda.api.interactions.components.buttons.ButtonInteraction;
+import net.dv8tion.jda.api.utils.data.DataObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the BotCommons listeners without a Discord connection. {@link #getJDA()} is a stand-in that collects
+ * listeners and answers REST actions locally after a configurable latency, so managers are initialized against it
+ * as usual:
+ * <pre>{@code
+ * Harness harness = Harness.create(4);
+ * CommandManager.init(harness.getJDA());
+ * CommandManager.addCommands(MusicCommands.class);
+ * System.out.println(harness.replay(Path.of("trace.jsonl"), 1.0));
+ * }</pre>
+ * Events are delivered on one thread per shard, like JDA's event threads, and the load is open loop: events are
+ * sent on schedule whether or not earlier ones were answered.
+ */
+@SuppressWarnings("unused")
+public final class Harness {
+	private static final Logger logger = LoggerFactory.getLogger(Harness.class);
+
+	private final Stubs stubs;
+	private final JDA jda;
+	private final ExecutorService[] shards;
+	private final ScheduledExecutorService rest;
+	private final List<Object> listeners = new CopyOnWriteArrayList<>();
+
+	private final Map<Long, User> users = new ConcurrentHashMap<>();
+	private final Map<Long, Guild> guilds = new ConcurrentHashMap<>();
+	private final Map<Long, MessageChannelUnion> channels = new ConcurrentHashMap<>();
+	private final Map<Long, Role> roles = new ConcurrentHashMap<>();
+
+	private final AtomicLong responseNumber = new AtomicLong();
+	private final LongAdder events = new LongAdder();
+	private final LongAdder interactions = new LongAdder();
+	private final LongAdder answered = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder restCalls = new LongAdder();
+	private final LatencyHistogram response = new LatencyHistogram();
+	private final LatencyHistogram handling = new LatencyHistogram();
+
+	/**
+	 * Tracks the first answer to one interaction.
+	 */
+	final class Ack {
+		private final long start = System.nanoTime();
+		private final AtomicBoolean done = new AtomicBoolean();
+		private final boolean tracked;
+
+		Ack(boolean tracked) {
+			this.tracked = tracked;
+		}
+
+		void acknowledge() {
+			if (done.compareAndSet(false, true) && tracked) {
+				response.record(System.nanoTime() - start);
+				answered.increment();
+			}
+		}
+
+		boolean isDone() {
+			return done.get();
+		}
+	}
+
+	private Harness(int shardCount) {
+		this.shards = new ExecutorService[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			int shard = i;
+			shards[i] = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "Harness-Shard-" + shard);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		ScheduledThreadPoolExecutor rest = new ScheduledThreadPoolExecutor(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+			Thread thread = new Thread(runnable, "Harness-Rest");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// It is also the gateway pool, where every command schedules a defer watchdog it cancels once it replied.
+		// Cancelled watchdogs would otherwise stay queued until their delay passed.
+		rest.setRemoveOnCancelPolicy(true);
+		this.rest = rest;
+		this.stubs = new Stubs(rest, restCalls);
+		this.jda = stubs.entity(JDA.class, jdaAnswers());
+		stubs.setJDA(jda);
+	}
+
+	/**
+	 * @param shards How many event threads deliver events, with guild events routed like Discord shards them
+	 */
+	public static Harness create(int shards) {
+		if (shards < 1)
+			throw new IllegalArgumentException("At least one shard is required");
+		return new Harness(shards);
+	}
+
+	/**
+	 * Sets how long every REST action takes to complete. Defaults to completing immediately.
+	 */
+	public Harness restLatency(Duration latency) {
+		stubs.setRestLatency(latency.toNanos());
+		return this;
+	}
+
+	public JDA getJDA() {
+		return jda;
+	}
+
+	/**
+	 * Delivers a {@link ReadyEvent}, e.g. to exercise command registration, and waits until it was handled.
+	 */
+	public void ready() {
+		deliver(new ReadyEvent(jda), 0, null);
+		drain(Duration.ofSeconds(10));
+	}
+
+	/**
+	 * Delivers one event asynchronously on its shard's event thread.
+	 */
+	public void send(TraceEvent trace) {
+		Ack ack = trace.type().equals("message") ? null : new Ack(true);
+		GenericEvent event = toEvent(trace, ack);
+		if (ack != null)
+			interactions.increment();
+		deliver(event, trace.guild(), ack);
+	}
+
+	/**
+	 * Synthesizes the event without delivering or tracking it, for callers that invoke listeners themselves such as
+	 * benchmarks. Its REST actions still complete and are counted.
+	 */
+	public GenericEvent createEvent(TraceEvent trace) {
+		return toEvent(trace, trace.type().equals("message") ? null : new Ack(false));
+	}
+
+	/**
+	 * Replays a JSON lines trace, see {@link TraceEvent}.
+	 * @param speed 2.0 replays the trace twice as fast as recorded
+	 */
+	public HarnessReport replay(Path trace, double speed) throws IOException {
+		return replay(TraceEvent.read(trace), speed);
+	}
+
+	public HarnessReport replay(List<TraceEvent> trace, double speed) {
+		if (speed <= 0)
+			throw new IllegalArgumentException("Speed must be positive");
+		long start = System.nanoTime();
+		for (TraceEvent event : trace) {
+			await(start + (long) (TimeUnit.MILLISECONDS.toNanos(event.at()) / speed));
+			send(event);
+		}
+		return finish(start);
+	}
+
+	/**
+	 * Sends the templates round robin at a fixed rate, ignoring their timestamps.
+	 */
+	public HarnessReport load(List<TraceEvent> templates, double perSecond, Duration duration) {
+		if (templates.isEmpty() || perSecond <= 0)
+			throw new IllegalArgumentException("Load needs templates and a positive rate");
+		long interval = (long) (1e9 / perSecond);
+		long count = duration.toNanos() / interval;
+		long start = System.nanoTime();
+		for (long i = 0; i < count; i++) {
+			await(start + i * interval);
+			send(templates.get((int) (i % templates.size())));
+		}
+		return finish(start);
+	}
+
+	/**
+	 * Clears the counters and histograms, e.g. after a warmup run.
+	 */
+	public void reset() {
+		events.reset();
+		interactions.reset();
+		answered.reset();
+		failures.reset();
+		restCalls.reset();
+		response.reset();
+		handling.reset();
+	}
+
+	public void shutdown() {
+		for (ExecutorService shard : shards)
+			shard.shutdownNow();
+		rest.shutdownNow();
+	}
+
+	private HarnessReport finish(long start) {
+		drain(Duration.ofSeconds(30));
+		return new HarnessReport(events.sum(), interactions.sum(), answered.sum(), failures.sum(), restCalls.sum(),
+				Duration.ofNanos(System.nanoTime() - start), response, handling);
+	}
+
+	// Waits until every shard handled its queued events and every interaction was answered, or the timeout passed
+	private void drain(Duration timeout) {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		CompletableFuture<?>[] idle = Arrays.stream(shards)
+				.map(shard -> CompletableFuture.runAsync(() -> {}, shard))
+				.toArray(CompletableFuture[]::new);
+		try {
+			CompletableFuture.allOf(idle).get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+		} catch (Exception e) {
+			logger.warn("Shards did not finish their events in time", e);
+		}
+		while (answered.sum() < interactions.sum() && System.nanoTime() < deadline)
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+	}
+
+	private static void await(long due) {
+		long wait;
+		while ((wait = due - System.nanoTime()) > 0)
+			LockSupport.parkNanos(wait);
+	}
+
+	private void deliver(GenericEvent event, long guild, Ack ack) {
+		long start = System.nanoTime();
+		// Discord's shard formula, direct messages go to shard 0
+		int shard = (int) ((guild >>> 22) % shards.length);
+		shards[shard].execute(() -> {
+			for (Object listener : listeners) {
+				try {
+					((EventListener) listener).onEvent(event);
+				} catch (Throwable e) {
+					failures.increment();
+					logger.error("Listener {} failed on {}", listener, event.getClass().getSimpleName(), e);
+				}
+			}
+			handling.record(System.nanoTime() - start);
+			events.increment();
+		});
+	}
+
+	private GenericEvent toEvent(TraceEvent trace, Ack ack) {
+		long number = responseNumber.incrementAndGet();
+		return switch (trace.type()) {
+			case "slash" -> new SlashCommandInteractionEvent(jda, number,
+					stubs.entity(SlashCommandInteraction.class, command(trace, Command.Type.SLASH, ack), ack));
+			case "user" -> {
+				Map<String, Stubs.Answer> answers = command(trace, Command.Type.USER, ack);
+				answers.put("getTarget", Stubs.value(user(trace.target())));
+				yield new UserContextInteractionEvent(jda, number, stubs.entity(UserContextInteraction.class, answers, ack));
+			}
+			case "message-context" -> {
+				Map<String, Stubs.Answer> answers = command(trace, Command.Type.MESSAGE, ack);
+				answers.put("getTarget", Stubs.value(message(trace, trace.target())));
+				yield new MessageContextInteractionEvent(jda, number, stubs.entity(MessageContextInteraction.class, answers, ack));
+			}
+			case "autocomplete" -> {
+				Map<String, Stubs.Answer> answers = command(trace, Command.Type.SLASH, ack);
+				answers.put("getTypeRaw", Stubs.value(InteractionType.COMMAND_AUTOCOMPLETE.getKey()));
+				OptionMapping focused = options(trace).stream()
+						.filter(option -> option.getName().equals(trace.focused()))
+						.findFirst()
+						.orElseThrow(() -> new IllegalArgumentException("Focused option " + trace.focused() + " has no value"));
+				answers.put("getFocusedOption", Stubs.value(new AutoCompleteQuery(focused)));
+				yield new CommandAutoCompleteInteractionEvent(jda, number,
+						stubs.entity(CommandAutoCompleteInteraction.class, answers, ack));
+			}
+			case "button" -> {
+				Map<String, Stubs.Answer> answers = interaction(trace, ack);
+				answers.put("getTypeRaw", Stubs.value(InteractionType.COMPONENT.getKey()));
+				answers.put("getComponentId", Stubs.value(trace.component()));
+				answers.put("getMessage", Stubs.value(message(trace, trace.message())));
+				answers.put("getMessageIdLong", Stubs.value(trace.message()));
+				answers.put("getMessageId", Stubs.value(Long.toUnsignedString(trace.message())));
+				yield new ButtonInteractionEvent(jda, number, stubs.entity(ButtonInteraction.class, answers, ack));
+			}
+			case "message" -> new MessageReceivedEvent(jda, number, message(trace, Stubs.snowflake()));
+			default -> throw new IllegalArgumentException("Unknown event type " + trace.type());
+		};
+	}
+
+	private Map<String, Stubs.Answer> interaction(TraceEvent trace, Ack ack) {
+		Map<String, Stubs.Answer> answers = new HashMap<>();
+		Guild guild = guild(trace.guild());
+		answers.put("getIdLong", Stubs.value(Stubs.snowflake()));
+		answers.put("isAcknowledged", (proxy, args) -> ack.isDone());
+		answers.put("getUser", Stubs.value(user(trace.user())));
+		answers.put("getMember", Stubs.value(guild == null ? null : member(trace.user(), guild)));
+		answers.put("getGuild", Stubs.value(guild));
+		answers.put("isFromGuild", Stubs.value(guild != null));
+		answers.put("getChannel", Stubs.value(channel(trace.channel(), guild)));
+		answers.put("getChannelIdLong", Stubs.value(trace.channel()));
+		answers.put("getChannelType", Stubs.value(guild == null ? ChannelType.PRIVATE : ChannelType.TEXT));
+		return answers;
+	}
+
+	private Map<String, Stubs.Answer> command(TraceEvent trace, Command.Type type, Ack ack) {
+		Map<String, Stubs.Answer> answers = interaction(trace, ack);
+		String[] path = trace.command().split(" ");
+		answers.put("getTypeRaw", Stubs.value(InteractionType.COMMAND.getKey()));
+		answers.put("getCommandType", Stubs.value(type));
+		answers.put("getName", Stubs.value(path[0]));
+		answers.put("getSubcommandGroup", Stubs.value(path.length == 3 ? path[1] : null));
+		answers.put("getSubcommandName", Stubs.value(path.length > 1 ? path[path.length - 1] : null));
+		answers.put("getFullCommandName", Stubs.value(trace.command()));
+		answers.put("getOptions", Stubs.value(options(trace)));
+		return answers;
+	}
+
+	private List<OptionMapping> options(TraceEvent trace) {
+		JsonObject options = trace.options();
+		if (options == null)
+			return List.of();
+		Guild guild = guild(trace.guild());
+		TLongObjectMap<Object> resolved = new TLongObjectHashMap<>();
+		List<OptionMapping> mappings = new ArrayList<>(options.size());
+		for (Map.Entry<String, JsonElement> entry : options.entrySet()) {
+			JsonElement value = entry.getValue();
+			OptionType type;
+			if (value.isJsonObject()) {
+				type = OptionType.valueOf(value.getAsJsonObject().get("type").getAsString());
+				value = value.getAsJsonObject().get("value");
+				long id = value.getAsLong();
+				switch (type) {
+					case USER, MENTIONABLE -> resolved.put(id, guild == null ? user(id) : member(id, guild));
+					case ROLE -> resolved.put(id, role(id));
+					case CHANNEL -> resolved.put(id, stubs.entity(GuildChannelUnion.class, Map.of(
+							"getIdLong", Stubs.value(id),
+							"getGuild", Stubs.value(guild))));
+					default -> {
+					}
+				}
+			} else {
+				type = optionType(value.getAsJsonPrimitive());
+			}
+			DataObject data = DataObject.empty()
+					.put("name", entry.getKey())
+					.put("type", type.getKey())
+					.put("value", value.getAsJsonPrimitive().isNumber() ? value.getAsNumber() : value.getAsString());
+			if (type == OptionType.BOOLEAN)
+				data.put("value", value.getAsBoolean());
+			// OptionMapping casts the JDA to its implementation class for mention parsing, which a stub is not
+			mappings.add(new OptionMapping(data, resolved, null, guild));
+		}
+		return mappings;
+	}
+
+	private static OptionType optionType(JsonPrimitive value) {
+		if (value.isBoolean())
+			return OptionType.BOOLEAN;
+		if (value.isNumber()) {
+			String number = value.getAsString();
+			return number.contains(".") || number.contains("e") || number.contains("E") ? OptionType.NUMBER : OptionType.INTEGER;
+		}
+		return OptionType.STRING;
+	}
+
+	private Message message(TraceEvent trace, long id) {
+		Guild guild = guild(trace.guild());
+		MessageChannelUnion channel = channel(trace.channel(), guild);
+		Map<String, Stubs.Answer> answers = new HashMap<>();
+		answers.put("getIdLong", Stubs.value(id));
+		answers.put("getContentRaw", Stubs.value(trace.content() == null ? "" : trace.content()));
+		answers.put("getContentDisplay", Stubs.value(trace.content() == null ? "" : trace.content()));
+		answers.put("getAuthor", Stubs.value(user(trace.user())));
+		answers.put("getMember", Stubs.value(guild == null ? null : member(trace.user(), guild)));
+		answers.put("getGuild", Stubs.value(guild));
+		answers.put("isFromGuild", Stubs.value(guild != null));
+		answers.put("getChannel", Stubs.value(channel));
+		answers.put("getChannelType", Stubs.value(guild == null ? ChannelType.PRIVATE : ChannelType.TEXT));
+		answers.put("getGuildChannel", Stubs.value(guild == null ? null : stubs.entity(GuildMessageChannelUnion.class, Map.of(
+				"getIdLong", Stubs.value(trace.channel()),
+				"getGuild", Stubs.value(guild),
+				"getType", Stubs.value(ChannelType.TEXT)))));
+		return stubs.entity(Message.class, answers);
+	}
+
+	private User user(long id) {
+		return users.computeIfAbsent(id, k -> stubs.entity(User.class, Map.of(
+				"getIdLong", Stubs.value(id),
+				"getName", Stubs.value("user" + id),
+				"getEffectiveName", Stubs.value("user" + id))));
+	}
+
+	// Members are created per event, which is cheaper than a second index and just as good for listeners
+	private Member member(long id, Guild guild) {
+		User user = user(id);
+		return stubs.entity(Member.class, Map.of(
+				"getIdLong", Stubs.value(id),
+				"getUser", Stubs.value(user),
+				"getGuild", Stubs.value(guild),
+				"getEffectiveName", Stubs.value(user.getName()),
+				"getPermissions", (proxy, args) -> EnumSet.allOf(Permission.class),
+				"hasPermission", Stubs.value(true)));
+	}
+
+	private Guild guild(long id) {
+		if (id == 0)
+			return null;
+		return guilds.computeIfAbsent(id, k -> stubs.entity(Guild.class, Map.of(
+				"getIdLong", Stubs.value(id),
+				"getName", Stubs.value("guild" + id))));
+	}
+
+	private MessageChannelUnion channel(long id, Guild guild) {
+		return channels.computeIfAbsent(id, k -> {
+			Map<String, Stubs.Answer> answers = new HashMap<>();
+			answers.put("getIdLong", Stubs.value(id));
+			answers.put("getType", Stubs.value(guild == null ? ChannelType.PRIVATE : ChannelType.TEXT));
+			answers.put("isDetached", Stubs.value(false));
+			return stubs.entity(MessageChannelUnion.class, answers);
+		});
+	}
+
+	private Role role(long id) {
+		return roles.computeIfAbsent(id, k -> stubs.entity(Role.class, Map.of("getIdLong", Stubs.value(id))));
+	}
+
+	private Map<String, Stubs.Answer> jdaAnswers() {
+		Map<String, Stubs.Answer> answers = new HashMap<>();
+		answers.put("addEventListener", (proxy, args) -> {
+			listeners.addAll(Arrays.asList((Object[]) args[0]));
+			return null;
+		});
+		answers.put("removeEventListener", (proxy, args) -> {
+			listeners.removeAll(Arrays.asList((Object[]) args[0]));
+			return null;
+		});
+		answers.put("getRegisteredListeners", (proxy, args) -> List.copyOf(listeners));
+		answers.put("getGatewayPool", (proxy, args) -> rest);
+		answers.put("getRateLimitPool", (proxy, args) -> rest);
+		answers.put("getCallbackPool", (proxy, args) -> rest);
+		answers.put("getStatus", Stubs.value(JDA.Status.CONNECTED));
+		answers.put("getSelfUser", (proxy, args) -> stubs.entity(SelfUser.class, Map.of()));
+		answers.put("getTextChannelById", (proxy, args) -> stubs.entity(TextChannel.class, Map.of(
+				"getIdLong", Stubs.value(args[0] instanceof String id ? Long.parseUnsignedLong(id) : (long) args[0]))));
+		answers.put("getGuildById", (proxy, args) -> guild(args[0] instanceof String id ? Long.parseUnsignedLong(id) : (long) args[0]));
+		answers.put("getUserById", (proxy, args) -> user(args[0] instanceof String id ? Long.parseUnsignedLong(id) : (long) args[0]));
+		return answers;
+	}
+}
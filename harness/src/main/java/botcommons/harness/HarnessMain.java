@@ -0,0 +1,83 @@
+package botcommons.harness;
+
+import botcommons.commands.CommandManager;
+import botcommons.commands.CommandMetrics;
+import botcommons.commands.ExecutionPolicy;
+import botcommons.menu.IMenu;
+import botcommons.menu.MenuManager;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a trace against command holders and menus given by class name:
+ * <pre>
+ * HarnessMain trace.jsonl [--speed 1.0 | --rate 500 --seconds 30] [--shards 1] [--rest-latency 50]
+ *             [--virtual-threads] [--warmup] [--commands com.example.Commands]... [--menu com.example.Menu]...
+ * </pre>
+ * With {@code --rate} the trace's events are sent round robin at that many per second instead of replayed.
+ */
+public final class HarnessMain {
+	private HarnessMain() {}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.err.println("Usage: HarnessMain <trace.jsonl> [--speed x | --rate n --seconds n] [--shards n] "
+					+ "[--rest-latency ms] [--virtual-threads] [--warmup] [--commands class]... [--menu class]...");
+			System.exit(1);
+		}
+
+		Path trace = Path.of(args[0]);
+		double speed = 1, rate = 0;
+		int shards = 1, seconds = 30;
+		long restLatency = 0;
+		boolean virtualThreads = false, warmup = false;
+		List<String> holders = new ArrayList<>(), menus = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+				case "--speed" -> speed = Double.parseDouble(args[++i]);
+				case "--rate" -> rate = Double.parseDouble(args[++i]);
+				case "--seconds" -> seconds = Integer.parseInt(args[++i]);
+				case "--shards" -> shards = Integer.parseInt(args[++i]);
+				case "--rest-latency" -> restLatency = Long.parseLong(args[++i]);
+				case "--virtual-threads" -> virtualThreads = true;
+				case "--warmup" -> warmup = true;
+				case "--commands" -> holders.add(args[++i]);
+				case "--menu" -> menus.add(args[++i]);
+				default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+			}
+		}
+
+		Harness harness = Harness.create(shards).restLatency(Duration.ofMillis(restLatency));
+		CommandManager.init(harness.getJDA(), virtualThreads ? ExecutionPolicy.virtualThreads() : ExecutionPolicy.inline());
+		MenuManager.init(harness.getJDA());
+		for (String holder : holders)
+			CommandManager.addCommands(Class.forName(holder));
+		for (String menu : menus)
+			MenuManager.registerMenu((IMenu) Class.forName(menu).getConstructor().newInstance());
+
+		List<TraceEvent> events = TraceEvent.read(trace);
+		if (warmup) {
+			run(harness, events, speed * 4, rate, Math.max(1, seconds / 3));
+			harness.reset();
+			CommandManager.getMetrics().reset();
+		}
+		HarnessReport report = run(harness, events, speed, rate, seconds);
+		System.out.println(report);
+
+		System.out.println();
+		for (CommandMetrics.Stats stats : CommandManager.getMetrics().getAll().values()) {
+			System.out.printf("%-24s %8d invocations %6d errors %8d rest calls  execute p99 %.2f ms%n", stats.getCommand(),
+					stats.getInvocations(), stats.getErrors(), stats.getRestCalls(),
+					stats.getLatency(CommandMetrics.Stage.EXECUTE).getValueAtPercentile(99, TimeUnit.MICROSECONDS) / 1000.0);
+		}
+		harness.shutdown();
+	}
+
+	private static HarnessReport run(Harness harness, List<TraceEvent> events, double speed, double rate, int seconds) {
+		return rate > 0 ? harness.load(events, rate, Duration.ofSeconds(seconds)) : harness.replay(events, speed);
+	}
+}
@@ -0,0 +1,58 @@
+package botcommons.harness;
+
+import botcommons.commands.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a replay or load run.
+ *
+ * @param events       Events delivered to the listeners
+ * @param interactions Interactions among those events
+ * @param answered     Interactions that were replied to, deferred or edited
+ * @param failures     Exceptions thrown by listeners
+ * @param restCalls    REST actions queued, submitted or completed
+ * @param elapsed      From the first event until the last answer or the drain timeout
+ * @param response     Nanoseconds from delivering an interaction to its first answer
+ * @param handling     Nanoseconds from delivering an event until every listener returned
+ */
+public record HarnessReport(long events, long interactions, long answered, long failures, long restCalls,
+							Duration elapsed, LatencyHistogram response, LatencyHistogram handling) {
+
+	public long unanswered() {
+		return interactions - answered;
+	}
+
+	/**
+	 * @return Events delivered per second
+	 */
+	public double throughput() {
+		return elapsed.isZero() ? 0 : events * 1e9 / elapsed.toNanos();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("""
+						events       %d in %d ms (%.1f/s)
+						interactions %d answered, %d unanswered
+						failures     %d
+						rest calls   %d
+						response ms  %s
+						handling ms  %s""",
+				events, elapsed.toMillis(), throughput(), answered, unanswered(), failures, restCalls,
+				percentiles(response), percentiles(handling));
+	}
+
+	private static String percentiles(LatencyHistogram histogram) {
+		if (histogram.getCount() == 0)
+			return "-";
+		return String.format("p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f",
+				millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+				histogram.getMax(TimeUnit.MICROSECONDS) / 1000.0);
+	}
+
+	private static double millis(LatencyHistogram histogram, double percentile) {
+		return histogram.getValueAtPercentile(percentile, TimeUnit.MICROSECONDS) / 1000.0;
+	}
+}
@@ -0,0 +1,271 @@
+package botcommons.harness;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.utils.TimeUtil;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Creates dynamic proxies standing in for JDA entities and REST actions. Unstubbed methods return empty values or
+ * further stubs, and every REST action completes successfully after the configured latency without any network.
+ */
+final class Stubs {
+	private static final AtomicLong sequence = new AtomicLong();
+
+	@FunctionalInterface
+	interface Answer {
+		Object answer(Object proxy, Object[] args) throws Throwable;
+	}
+
+	private final ScheduledExecutorService rest;
+	private final LongAdder restCalls;
+	private volatile long restLatencyNanos;
+	private JDA jda;
+
+	Stubs(ScheduledExecutorService rest, LongAdder restCalls) {
+		this.rest = rest;
+		this.restCalls = restCalls;
+	}
+
+	void setJDA(JDA jda) {
+		this.jda = jda;
+	}
+
+	void setRestLatency(long nanos) {
+		this.restLatencyNanos = nanos;
+	}
+
+	/**
+	 * @return A unique snowflake carrying the current time, as Discord assigns them
+	 */
+	static long snowflake() {
+		return TimeUtil.getDiscordTimestamp(System.currentTimeMillis()) | (sequence.incrementAndGet() & 0x3FFFFF);
+	}
+
+	static Answer value(Object value) {
+		return (proxy, args) -> value;
+	}
+
+	<T> T entity(Class<T> type, Map<String, Answer> answers) {
+		return entity(type, answers, null);
+	}
+
+	/**
+	 * @param ack Acknowledged by REST actions created through methods starting with reply, defer or edit
+	 */
+	<T> T entity(Class<T> type, Map<String, Answer> answers, Harness.Ack ack) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+				new EntityHandler(type, answers, ack)));
+	}
+
+	private Object action(Method method, Harness.Ack ack) {
+		Class<?> type = method.getReturnType();
+		return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+				new ActionHandler(type, resultType(method.getGenericReturnType()), ack));
+	}
+
+	private Object fallback(Class<?> type) {
+		if (type == void.class || type == Void.class)
+			return null;
+		if (type.isPrimitive())
+			return Array.get(Array.newInstance(type, 1), 0);
+		if (type == String.class)
+			return "";
+		if (type == List.class || type == Collection.class)
+			return List.of();
+		if (type == Set.class)
+			return Set.of();
+		if (type == Map.class)
+			return Map.of();
+		if (type == Optional.class)
+			return Optional.empty();
+		if (type.isEnum())
+			return type.getEnumConstants()[0];
+		if (type.isInterface())
+			return entity(type, Map.of());
+		return null;
+	}
+
+	private final class EntityHandler implements InvocationHandler {
+		private final Class<?> type;
+		private final Map<String, Answer> answers;
+		private final Harness.Ack ack;
+		// Nested stubs by method name, so repeated calls return the same object
+		private final Map<String, Object> nested = new ConcurrentHashMap<>();
+		private final long id = snowflake();
+
+		EntityHandler(Class<?> type, Map<String, Answer> answers, Harness.Ack ack) {
+			this.type = type;
+			this.answers = answers;
+			this.ack = ack;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (method.getDeclaringClass() == Object.class)
+				return objectMethod(proxy, type, name, args);
+			Answer answer = answers.get(name);
+			if (answer != null)
+				return answer.answer(proxy, args);
+			if (name.equals("getJDA"))
+				return jda;
+			if (name.equals("getIdLong"))
+				return id;
+			if (RestAction.class.isAssignableFrom(method.getReturnType()))
+				return action(method, ack != null && acknowledges(name) ? ack : null);
+			if (method.isDefault())
+				return InvocationHandler.invokeDefault(proxy, method, args);
+			Class<?> returnType = method.getReturnType();
+			if (returnType.isInterface() && !Collection.class.isAssignableFrom(returnType) && returnType != Map.class)
+				return nested.computeIfAbsent(name, k -> fallback(returnType));
+			return fallback(returnType);
+		}
+	}
+
+	private final class ActionHandler implements InvocationHandler {
+		private final Class<?> type;
+		private final Class<?> resultType;
+		private final Harness.Ack ack;
+
+		ActionHandler(Class<?> type, Class<?> resultType, Harness.Ack ack) {
+			this.type = type;
+			this.resultType = resultType;
+			this.ack = ack;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (method.getDeclaringClass() == Object.class)
+				return objectMethod(proxy, type, name, args);
+			switch (name) {
+				case "queue" -> {
+					Consumer<Object> success = args != null && args.length > 0 ? (Consumer<Object>) args[0] : null;
+					send(() -> {
+						if (success != null)
+							success.accept(fallback(resultType));
+					});
+					return null;
+				}
+				case "submit" -> {
+					CompletableFuture<Object> future = new CompletableFuture<>();
+					send(() -> future.complete(fallback(resultType)));
+					return future;
+				}
+				case "complete" -> {
+					sent();
+					return fallback(resultType);
+				}
+				case "getJDA" -> {
+					return jda;
+				}
+			}
+			if (method.isDefault())
+				return InvocationHandler.invokeDefault(proxy, method, args);
+			if (method.getReturnType().isInstance(proxy))
+				return proxy;
+			return fallback(method.getReturnType());
+		}
+
+		private void send(Runnable response) {
+			sent();
+			long latency = restLatencyNanos;
+			if (latency <= 0)
+				rest.execute(response);
+			else
+				rest.schedule(response, latency, TimeUnit.NANOSECONDS);
+		}
+
+		private void sent() {
+			restCalls.increment();
+			if (ack != null)
+				ack.acknowledge();
+		}
+	}
+
+	private static boolean acknowledges(String name) {
+		return name.startsWith("reply") || name.startsWith("defer") || name.startsWith("edit");
+	}
+
+	private static Object objectMethod(Object proxy, Class<?> type, String name, Object[] args) {
+		return switch (name) {
+			case "equals" -> proxy == args[0];
+			case "hashCode" -> System.identityHashCode(proxy);
+			default -> type.getSimpleName() + "Stub@" + Integer.toHexString(System.identityHashCode(proxy));
+		};
+	}
+
+	/**
+	 * Resolves {@code T} of the {@code RestAction<T>} the given action type implements, e.g. {@code InteractionHook}
+	 * for {@code ReplyCallbackAction} or {@code Message} for {@code WebhookMessageCreateAction<Message>}.
+	 */
+	static Class<?> resultType(Type actionType) {
+		Type result = find(actionType, Map.of());
+		return result == null ? Object.class : erase(result);
+	}
+
+	private static Type find(Type type, Map<TypeVariable<?>, Type> bindings) {
+		Class<?> raw;
+		Map<TypeVariable<?>, Type> resolved = new HashMap<>();
+		if (type instanceof ParameterizedType parameterized) {
+			raw = (Class<?>) parameterized.getRawType();
+			TypeVariable<?>[] variables = raw.getTypeParameters();
+			Type[] arguments = parameterized.getActualTypeArguments();
+			for (int i = 0; i < variables.length; i++) {
+				Type argument = arguments[i];
+				resolved.put(variables[i], argument instanceof TypeVariable<?> variable && bindings.containsKey(variable)
+						? bindings.get(variable) : argument);
+			}
+		} else if (type instanceof Class<?> c) {
+			raw = c;
+		} else {
+			return null;
+		}
+		if (raw == RestAction.class)
+			return resolved.getOrDefault(raw.getTypeParameters()[0], Object.class);
+		for (Type parent : raw.getGenericInterfaces()) {
+			Class<?> parentRaw = erase(parent);
+			if (!RestAction.class.isAssignableFrom(parentRaw))
+				continue;
+			Type found = find(parent, resolved);
+			if (found != null)
+				return found;
+		}
+		return null;
+	}
+
+	private static Class<?> erase(Type type) {
+		if (type instanceof Class<?> c)
+			return c;
+		if (type instanceof ParameterizedType parameterized)
+			return (Class<?>) parameterized.getRawType();
+		if (type instanceof TypeVariable<?> variable)
+			return variable.getBounds().length == 0 ? Object.class : erase(variable.getBounds()[0]);
+		if (type instanceof WildcardType wildcard)
+			return erase(wildcard.getUpperBounds()[0]);
+		return Object.class;
+	}
+}
@@ -0,0 +1,61 @@
+package botcommons.harness;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One recorded or synthesized gateway event. Traces are stored as JSON lines, e.g.
+ * <pre>{@code
+ * {"at": 0, "type": "slash", "command": "music play", "user": 1, "guild": 2, "options": {"song": "abc", "volume": 50}}
+ * {"at": 15, "type": "autocomplete", "command": "music play", "user": 1, "guild": 2, "focused": "song", "options": {"song": "ab"}}
+ * {"at": 40, "type": "button", "user": 1, "guild": 2, "message": 99, "component": "next"}
+ * {"at": 41, "type": "message", "user": 3, "guild": 2, "channel": 5, "content": "hello"}
+ * }</pre>
+ * Option values are strings, numbers or booleans, or objects like {@code {"type": "USER", "value": 1}} for
+ * entity options. A guild of 0 means the event comes from direct messages.
+ *
+ * @param at        Milliseconds since the start of the trace
+ * @param type      slash, user, message-context, autocomplete, button or message
+ * @param command   The full command name, for command and autocomplete events
+ * @param target    The targeted user or message id, for context menu events
+ * @param message   The message the component belongs to, for button events
+ */
+public record TraceEvent(long at, String type, String command, JsonObject options, String focused, long user,
+						 long guild, long channel, String component, long message, long target, String content) {
+	private static final Gson GSON = new Gson();
+
+	public static TraceEvent slash(String command, long user, long guild, Map<String, ?> options) {
+		return new TraceEvent(0, "slash", command, GSON.toJsonTree(options).getAsJsonObject(), null, user, guild, 0, null, 0, 0, null);
+	}
+
+	public static TraceEvent autocomplete(String command, long user, long guild, String focused, Map<String, ?> options) {
+		return new TraceEvent(0, "autocomplete", command, GSON.toJsonTree(options).getAsJsonObject(), focused, user, guild, 0, null, 0, 0, null);
+	}
+
+	public static TraceEvent button(long user, long guild, long message, String component) {
+		return new TraceEvent(0, "button", null, null, null, user, guild, 0, component, message, 0, null);
+	}
+
+	public static TraceEvent message(long user, long guild, long channel, String content) {
+		return new TraceEvent(0, "message", null, null, null, user, guild, channel, null, 0, 0, content);
+	}
+
+	/**
+	 * Reads a JSON lines trace, ordered by {@link #at()}.
+	 */
+	public static List<TraceEvent> read(Path trace) throws IOException {
+		try (var lines = Files.lines(trace)) {
+			return lines.filter(line -> !line.isBlank())
+					.map(line -> GSON.fromJson(line, TraceEvent.class))
+					.sorted(Comparator.comparingLong(TraceEvent::at))
+					.toList();
+		}
+	}
+}
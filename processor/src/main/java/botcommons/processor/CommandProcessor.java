@@ -0,0 +1,342 @@
+package botcommons.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Validates {@code @CommandHolder}, {@code @Command}, {@code @Param} and {@code @AutoCompleteHandler} usage at compile
+ * time and generates a {@code GeneratedCommands} registry with direct-call invokers for every holder, registered in
+ * {@code META-INF/services} so {@code CommandManager} can find it without scanning.
+ */
+@SupportedAnnotationTypes({
+		CommandProcessor.COMMAND,
+		CommandProcessor.COMMAND_HOLDER,
+		CommandProcessor.PARAM,
+		CommandProcessor.AUTOCOMPLETE_HANDLER
+})
+public class CommandProcessor extends AbstractProcessor {
+	static final String COMMAND = "botcommons.commands.Command";
+	static final String COMMAND_HOLDER = "botcommons.commands.CommandHolder";
+	static final String PARAM = "botcommons.commands.Param";
+	static final String AUTOCOMPLETE_HANDLER = "botcommons.commands.AutoCompleteHandler";
+	private static final String EVENT = "botcommons.commands.GenericCommandEvent";
+	private static final String AUTOCOMPLETE_EVENT = "net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent";
+	private static final String REGISTRY = "botcommons.commands.GeneratedCommands";
+	private static final Pattern SLASH_NAME = Pattern.compile("^[-_\\p{L}\\p{N}]{1,32}$");
+
+	private Elements elements;
+	private Types types;
+	private Filer filer;
+	private Messager messager;
+	private final Set<String> registries = new TreeSet<>();
+
+	@Override
+	public synchronized void init(ProcessingEnvironment processingEnv) {
+		super.init(processingEnv);
+		this.elements = processingEnv.getElementUtils();
+		this.types = processingEnv.getTypeUtils();
+		this.filer = processingEnv.getFiler();
+		this.messager = processingEnv.getMessager();
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+		if (round.processingOver()) {
+			writeServiceFile();
+			return false;
+		}
+
+		TypeElement command = elements.getTypeElement(COMMAND);
+		if (command != null) {
+			// Holders declaring commands, and holders that only inherit theirs
+			Set<TypeElement> holders = new LinkedHashSet<>();
+			for (ExecutableElement method : ElementFilter.methodsIn(round.getElementsAnnotatedWith(command)))
+				holders.add((TypeElement) method.getEnclosingElement());
+			TypeElement holder = elements.getTypeElement(COMMAND_HOLDER);
+			if (holder != null)
+				holders.addAll(ElementFilter.typesIn(round.getElementsAnnotatedWith(holder)));
+			for (TypeElement type : holders)
+				generate(type);
+		}
+
+		TypeElement autocomplete = elements.getTypeElement(AUTOCOMPLETE_HANDLER);
+		if (autocomplete != null) {
+			for (ExecutableElement method : ElementFilter.methodsIn(round.getElementsAnnotatedWith(autocomplete)))
+				validateAutoCompleteHandler(method);
+		}
+		return false;
+	}
+
+	private void generate(TypeElement holder) {
+		// Abstract classes and interfaces may declare commands for the holders extending them, but cannot be registered
+		if (holder.getModifiers().contains(Modifier.ABSTRACT) || holder.getKind().isInterface())
+			return;
+		if (mirror(holder, COMMAND_HOLDER) == null) {
+			error(holder, "Classes declaring @Command methods must be annotated with @CommandHolder");
+			return;
+		}
+		// The public methods the holder declares or inherits, as Class.getMethods() sees them
+		List<ExecutableElement> methods = new ArrayList<>();
+		for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(holder))) {
+			if (mirror(method, COMMAND) == null)
+				continue;
+			boolean inherited = !method.getEnclosingElement().equals(holder);
+			if (inherited && method.getModifiers().contains(Modifier.STATIC) && method.getEnclosingElement().getKind().isInterface())
+				continue;
+			methods.add(method);
+		}
+		if (methods.isEmpty())
+			return;
+		if (holder.getModifiers().contains(Modifier.PRIVATE)
+				|| holder.getNestingKind().isNested() && !holder.getModifiers().contains(Modifier.STATIC)) {
+			error(holder, "@CommandHolder classes must be top-level or static nested classes that are not private");
+			return;
+		}
+
+		boolean valid = true;
+		boolean needsInstance = false;
+		List<String> entries = new ArrayList<>();
+		for (ExecutableElement method : methods) {
+			String entry = entry(holder, method);
+			if (entry == null) {
+				valid = false;
+				continue;
+			}
+			entries.add(entry);
+			needsInstance |= !method.getModifiers().contains(Modifier.STATIC);
+		}
+		if (needsInstance && !hasPublicNoArgConstructor(holder)) {
+			error(holder, "@CommandHolder classes with instance @Command methods need a public no-argument constructor");
+			valid = false;
+		}
+		if (!valid)
+			return;
+
+		String packageName = elements.getPackageOf(holder).getQualifiedName().toString();
+		String holderName = holder.getQualifiedName().toString();
+		String simpleName = flatName(holder) + "_Commands";
+		String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+		StringBuilder source = new StringBuilder();
+		source.append("// Generated by the BotCommons annotation processor. Do not edit.\n");
+		if (!packageName.isEmpty())
+			source.append("package ").append(packageName).append(";\n\n");
+		source.append("public final class ").append(simpleName).append(" implements ").append(REGISTRY).append(" {\n");
+		source.append("\t@Override\n");
+		source.append("\tpublic Class<?> holder() {\n");
+		source.append("\t\treturn ").append(holderName).append(".class;\n");
+		source.append("\t}\n\n");
+		source.append("\t@Override\n");
+		source.append("\t@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+		source.append("\tpublic java.util.List<Entry> commands(Holders holders) throws ReflectiveOperationException {\n");
+		if (needsInstance)
+			source.append("\t\t").append(holderName).append(" instance = (").append(holderName).append(") holders.get(")
+					.append(holderName).append(".class);\n");
+		source.append("\t\treturn java.util.List.of(\n");
+		for (int i = 0; i < entries.size(); i++) {
+			source.append(entries.get(i));
+			source.append(i + 1 < entries.size() ? ",\n" : "\n");
+		}
+		source.append("\t\t);\n");
+		source.append("\t}\n");
+		source.append("}\n");
+
+		try {
+			JavaFileObject file = filer.createSourceFile(qualifiedName, holder);
+			try (Writer writer = file.openWriter()) {
+				writer.write(source.toString());
+			}
+			registries.add(qualifiedName);
+		} catch (IOException e) {
+			error(holder, "Could not write command registry: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Validates one command method and builds its {@code new Entry(method, invoker)} expression, or returns null after
+	 * reporting errors.
+	 */
+	private String entry(TypeElement holder, ExecutableElement method) {
+		boolean valid = true;
+		if (!method.getModifiers().contains(Modifier.PUBLIC)) {
+			error(method, "@Command methods must be public");
+			valid = false;
+		}
+
+		AnnotationMirror command = mirror(method, COMMAND);
+		String name = String.valueOf(value(command, "name"));
+		Object type = value(command, "type");
+		boolean slash = type == null || type.toString().equals("SLASH");
+		if (slash && (!SLASH_NAME.matcher(name).matches() || !name.equals(name.toLowerCase()))) {
+			error(method, "Slash command name \"" + name + "\" must be 1-32 lowercase letters, digits, '-' or '_'");
+			valid = false;
+		}
+
+		String holderName = holder.getQualifiedName().toString();
+		StringBuilder parameterTypes = new StringBuilder();
+		StringBuilder arguments = new StringBuilder();
+		Set<String> optionNames = new HashSet<>();
+		for (VariableElement parameter : method.getParameters()) {
+			TypeMirror parameterType = parameter.asType();
+			String erased = types.erasure(parameterType).toString();
+			parameterTypes.append(", ").append(erased).append(".class");
+			if (!arguments.isEmpty())
+				arguments.append(", ");
+
+			if (erased.equals(EVENT)) {
+				arguments.append("event");
+				continue;
+			}
+			AnnotationMirror param = mirror(parameter, PARAM);
+			if (param == null) {
+				error(parameter, "Parameters of @Command methods must be annotated with @Param");
+				valid = false;
+				continue;
+			}
+			String declared = String.valueOf(value(param, "name"));
+			String optionName = declared.isEmpty() ? parameter.getSimpleName().toString() : declared;
+			if (!optionNames.add(optionName)) {
+				error(parameter, "Duplicate option name \"" + optionName + "\"");
+				valid = false;
+			}
+			if (slash && (!SLASH_NAME.matcher(optionName).matches() || !optionName.equals(optionName.toLowerCase()))) {
+				error(parameter, "Option name \"" + optionName + "\" must be 1-32 lowercase letters, digits, '-' or '_'");
+				valid = false;
+			}
+			Object choices = value(param, "choices");
+			if (Boolean.TRUE.equals(value(param, "autocomplete")) && choices instanceof List<?> list && !list.isEmpty()) {
+				error(parameter, "Options cannot use both autocomplete and fixed choices");
+				valid = false;
+			}
+
+			// Primitive class literals make getArg return zero instead of null for missing optional options
+			String argumentType = parameterType.getKind().isPrimitive() ? parameterType.toString() : erased;
+			arguments.append("event.getArg(").append(literal(optionName)).append(", ").append(argumentType).append(".class)");
+		}
+		if (!valid)
+			return null;
+
+		String target = method.getModifiers().contains(Modifier.STATIC) ? holderName : "instance";
+		return "\t\t\t\tnew Entry(" + holderName + ".class.getMethod(" + literal(method.getSimpleName().toString()) + parameterTypes + "),\n" +
+				"\t\t\t\t\t\tevent -> " + target + "." + method.getSimpleName() + "(" + arguments + "))";
+	}
+
+	private void validateAutoCompleteHandler(ExecutableElement method) {
+		List<? extends VariableElement> parameters = method.getParameters();
+		if (parameters.size() != 1 || !types.erasure(parameters.get(0).asType()).toString().equals(AUTOCOMPLETE_EVENT))
+			error(method, "@AutoCompleteHandler methods must take a single CommandAutoCompleteInteractionEvent");
+		if (!method.getModifiers().contains(Modifier.PUBLIC))
+			error(method, "@AutoCompleteHandler methods must be public");
+		if (mirror(method.getEnclosingElement(), COMMAND_HOLDER) == null)
+			error(method, "@AutoCompleteHandler methods must be declared in a @CommandHolder class");
+	}
+
+	private boolean hasPublicNoArgConstructor(TypeElement holder) {
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(holder.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC))
+				return true;
+		}
+		return false;
+	}
+
+	private void writeServiceFile() {
+		if (registries.isEmpty())
+			return;
+		String path = "META-INF/services/" + REGISTRY;
+		// An incremental build only processes the changed holders, so registries from earlier builds are kept while
+		// their classes still exist
+		try {
+			FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", path);
+			try (BufferedReader reader = new BufferedReader(existing.openReader(true))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (!line.isEmpty() && !line.startsWith("#") && elements.getTypeElement(line) != null)
+						registries.add(line);
+				}
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			// No service file yet
+		}
+		try {
+			FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", path);
+			try (Writer writer = file.openWriter()) {
+				for (String registry : registries)
+					writer.write(registry + "\n");
+			}
+		} catch (IOException e) {
+			messager.printMessage(Diagnostic.Kind.ERROR, "Could not write " + REGISTRY + " service file: " + e.getMessage());
+		}
+	}
+
+	private static String flatName(TypeElement type) {
+		StringBuilder name = new StringBuilder(type.getSimpleName());
+		Element enclosing = type.getEnclosingElement();
+		while (enclosing != null && enclosing.getKind() != ElementKind.PACKAGE) {
+			name.insert(0, enclosing.getSimpleName() + "_");
+			enclosing = enclosing.getEnclosingElement();
+		}
+		return name.toString();
+	}
+
+	private static AnnotationMirror mirror(Element element, String annotation) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation))
+				return mirror;
+		}
+		return null;
+	}
+
+	private Object value(AnnotationMirror mirror, String name) {
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements.getElementValuesWithDefaults(mirror).entrySet()) {
+			if (entry.getKey().getSimpleName().contentEquals(name))
+				return entry.getValue().getValue();
+		}
+		return null;
+	}
+
+	private static String literal(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private void error(Element element, String message) {
+		messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
@@ -13,29 +13,50 @@ import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
 import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.sharding.ShardManager;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @SuppressWarnings("unused")
 public class CacheManager extends ListenerAdapter {
 	private CacheManager() {}
 
-	public static final HashMap<String, List<MemberStructure>> guildMemberCache = new HashMap<>();
-	public static final HashMap<String, List<GuildStructure>> mutualGuildsCache = new HashMap<>();
-	public static final HashMap<String, List<MessageStructure>> channelMessageCache = new HashMap<>();
-	public static final HashMap<String, List<MessageStructure>> userMessageCache = new HashMap<>();
-	public static final HashMap<String, User> userCache = new HashMap<>();
+	// Shared by every shard, so the maps and the lists in them are safe for concurrent use
+	public static final Map<String, List<MemberStructure>> guildMemberCache = new ConcurrentHashMap<>();
+	public static final Map<String, List<GuildStructure>> mutualGuildsCache = new ConcurrentHashMap<>();
+	public static final Map<String, List<MessageStructure>> channelMessageCache = new ConcurrentHashMap<>();
+	public static final Map<String, List<MessageStructure>> userMessageCache = new ConcurrentHashMap<>();
+	public static final Map<String, User> userCache = new ConcurrentHashMap<>();
+
+	private static final AtomicBoolean updatePending = new AtomicBoolean();
 
 	public static void init(JDA jda, boolean guildMembers, boolean mutualGuilds, boolean channelMessages, boolean userMessages, boolean users) {
 		if (jda == null) throw new IllegalArgumentException("JDA instance cannot be null");
-		if (!guildMembers && !mutualGuilds && !channelMessages && !userMessages && !users) throw new IllegalArgumentException("At least one cache must be enabled");
+		init(guildMembers, mutualGuilds, channelMessages, userMessages, users);
 		jda.addEventListener(new CacheManager());
+	}
 
+	/**
+	 * Caches events from every shard of the manager into the same maps.
+	 */
+	public static void init(ShardManager shardManager, boolean guildMembers, boolean mutualGuilds, boolean channelMessages, boolean userMessages, boolean users) {
+		if (shardManager == null) throw new IllegalArgumentException("ShardManager instance cannot be null");
+		init(guildMembers, mutualGuilds, channelMessages, userMessages, users);
+		shardManager.addEventListener(new CacheManager());
+	}
 
+	private static void init(boolean guildMembers, boolean mutualGuilds, boolean channelMessages, boolean userMessages, boolean users) {
+		if (!guildMembers && !mutualGuilds && !channelMessages && !userMessages && !users) throw new IllegalArgumentException("At least one cache must be enabled");
 
 		if (guildMembers) JsonUtils.createCache(guildMemberCache, "guild_member_cache");
 		if (mutualGuilds) JsonUtils.createCache(mutualGuildsCache, "mutual_guilds_cache");
@@ -45,36 +66,60 @@ public class CacheManager extends ListenerAdapter {
 	}
 
 	public static void update() {
-		JsonUtils.updateCache(guildMemberCache, "guild_member_cache");
-		JsonUtils.updateCache(mutualGuildsCache, "mutual_guilds_cache");
-		JsonUtils.updateCache(channelMessageCache, "channel_message_cache");
-		JsonUtils.updateCache(userMessageCache, "user_message_cache");
+		JsonUtils.updateCache(snapshot(guildMemberCache), "guild_member_cache");
+		JsonUtils.updateCache(snapshot(mutualGuildsCache), "mutual_guilds_cache");
+		JsonUtils.updateCache(snapshot(channelMessageCache), "channel_message_cache");
+		JsonUtils.updateCache(snapshot(userMessageCache), "user_message_cache");
 
 		JsonUtils.updateCache(userCache, "user_cache");
 	}
 
+	// Events from all shards mark the cache dirty, and one write a second later persists all of them
+	private static void scheduleUpdate() {
+		if (updatePending.compareAndSet(false, true))
+			CompletableFuture.runAsync(() -> {
+				updatePending.set(false);
+				update();
+			}, CompletableFuture.delayedExecutor(1, TimeUnit.SECONDS));
+	}
+
+	private static <K, V> Map<K, List<V>> snapshot(Map<K, List<V>> map) {
+		Map<K, List<V>> copy = new HashMap<>();
+		map.forEach((key, list) -> {
+			synchronized (list) {
+				copy.put(key, new ArrayList<>(list));
+			}
+		});
+		return copy;
+	}
+
+	private static <T> List<T> newList() {
+		return Collections.synchronizedList(new ArrayList<>());
+	}
+
 	// Message cache code
 	@Override
 	public void onMessageReceived(@NotNull MessageReceivedEvent event) {
 		if (!event.isFromGuild())
 			return;
-		channelMessageCache.putIfAbsent(event.getChannel().getId(), new ArrayList<>());
-		channelMessageCache.get(event.getChannel().getId()).add(MessageStructure.fromMessage(event.getMessage()));
+		MessageStructure message = MessageStructure.fromMessage(event.getMessage());
+		channelMessageCache.computeIfAbsent(event.getChannel().getId(), key -> newList()).add(message);
 
 		if (event.getMember() == null) return;
 
-		userMessageCache.putIfAbsent(event.getAuthor().getId(), new ArrayList<>());
-		userMessageCache.get(event.getAuthor().getId()).add(MessageStructure.fromMessage(event.getMessage()));
-		update();
+		userMessageCache.computeIfAbsent(event.getAuthor().getId(), key -> newList()).add(message);
+		scheduleUpdate();
 	}
 
 	@Override
 	public void onMessageDelete(@NotNull MessageDeleteEvent event) {
 		if (!event.isFromGuild())
 			return; // Ignore DMs
-		channelMessageCache.get(event.getChannel().getId()).removeIf(messageStructure -> messageStructure.id().equals(event.getMessageId()));
+		List<MessageStructure> messages = channelMessageCache.get(event.getChannel().getId());
+		if (messages != null)
+			messages.removeIf(messageStructure -> messageStructure.id().equals(event.getMessageId()));
 		userMessageCache.forEach((member, messageStructures) -> messageStructures.removeIf(messageStructure -> messageStructure.id().equals(event.getMessageId())));
-		update();
+		scheduleUpdate();
 	}
 
 	// Guild member cache, and mutual guilds cache code
@@ -82,31 +127,36 @@ public class CacheManager extends ListenerAdapter {
 	public void onGuildReady(@NotNull GuildReadyEvent event) {
 		event.getGuild().loadMembers().onSuccess(members -> {
 			System.out.printf("Loaded %d members for guild %s%n", members.size(), event.getGuild().getName());
-			guildMemberCache.put(event.getGuild().getId(), members.stream().map(MemberStructure::fromMember).toList());
+			List<MemberStructure> structures = newList();
+			members.forEach(member -> structures.add(MemberStructure.fromMember(member)));
+			guildMemberCache.put(event.getGuild().getId(), structures);
 
+			GuildStructure guild = GuildStructure.fromGuild(event.getGuild());
 			members.forEach(member -> {
-				mutualGuildsCache.putIfAbsent(member.getUser().getId(), new ArrayList<>());
-				mutualGuildsCache.get(member.getUser().getId()).add(GuildStructure.fromGuild(event.getGuild()));
+				mutualGuildsCache.computeIfAbsent(member.getUser().getId(), key -> newList()).add(guild);
 
 				userCache.putIfAbsent(member.getUser().getId(), member.getUser());
 			});
-			update();
+			scheduleUpdate();
 		}).onError(Throwable::printStackTrace);
 	}
 
 	@Override
 	public void onGuildMemberJoin(@NotNull GuildMemberJoinEvent event) {
-		guildMemberCache.get(event.getGuild().getId()).add(MemberStructure.fromMember(event.getMember()));
-		mutualGuildsCache.putIfAbsent(event.getUser().getId(), new ArrayList<>());
-		mutualGuildsCache.get(event.getUser().getId()).add(GuildStructure.fromGuild(event.getGuild()));
-		update();
+		guildMemberCache.computeIfAbsent(event.getGuild().getId(), key -> newList()).add(MemberStructure.fromMember(event.getMember()));
+		mutualGuildsCache.computeIfAbsent(event.getUser().getId(), key -> newList()).add(GuildStructure.fromGuild(event.getGuild()));
+		scheduleUpdate();
 	}
 
 	@Override
 	public void onGuildMemberRemove(@NotNull GuildMemberRemoveEvent event) {
-		guildMemberCache.get(event.getGuild().getId()).removeIf(memberStructure -> memberStructure.id().equals(event.getUser().getId()));
-		mutualGuildsCache.get(event.getUser().getId()).remove(GuildStructure.fromGuild(event.getGuild()));
-		update();
+		List<MemberStructure> members = guildMemberCache.get(event.getGuild().getId());
+		if (members != null)
+			members.removeIf(memberStructure -> memberStructure.id().equals(event.getUser().getId()));
+		List<GuildStructure> guilds = mutualGuildsCache.get(event.getUser().getId());
+		if (guilds != null)
+			guilds.removeIf(guildStructure -> guildStructure.id().equals(event.getGuild().getId()));
+		scheduleUpdate();
 	}
 
 	public record MessageStructure(String id, String content, String contentDisplay, ChannelStructure channel, @Nullable MemberStructure author) {
@@ -0,0 +1,186 @@
+package botcommons.commands;
+
+import net.dv8tion.jda.api.entities.IMentionable;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.channel.Channel;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.entities.channel.unions.GuildChannelUnion;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Maps command parameter types to the {@link OptionType} they are registered as and to the decoder that turns an
+ * {@link OptionMapping} into the parameter value. Primitive parameters are decoded without boxing, enums are
+ * supported out of the box and other types can be added with {@link #register(Class, OptionType, Function)}.
+ * {@code List}, {@code ArrayList} and {@code Object[]} parameters are string options holding a comma separated
+ * list, decoded into its trimmed, non-empty items.
+ */
+@SuppressWarnings("unused")
+public final class ArgumentConverters {
+	private static final MethodHandle NATURAL;
+	private static final MethodHandle APPLY;
+
+	/**
+	 * @param optionType The option type commands register for the parameter type
+	 * @param decoder    {@code (OptionMapping)T}, exactly typed to the parameter type
+	 * @param boxed      The decoder adapted to {@code (OptionMapping)Object} for {@link GenericCommandEvent#getArg}
+	 */
+	private record Converter(OptionType optionType, MethodHandle decoder, MethodHandle boxed) {
+		Converter(OptionType optionType, MethodHandle decoder) {
+			this(optionType, decoder, decoder.asType(MethodType.methodType(Object.class, OptionMapping.class)));
+		}
+	}
+
+	private static final Map<Class<?>, Converter> converters = new ConcurrentHashMap<>();
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			NATURAL = lookup.findStatic(ArgumentConverters.class, "natural",
+					MethodType.methodType(Object.class, OptionMapping.class));
+			APPLY = lookup.findVirtual(Function.class, "apply", MethodType.methodType(Object.class, Object.class));
+
+			getter(String.class, OptionType.STRING, "getAsString");
+			getter(int.class, OptionType.INTEGER, "getAsInt");
+			getter(long.class, OptionType.INTEGER, "getAsLong");
+			getter(double.class, OptionType.NUMBER, "getAsDouble");
+			getter(boolean.class, OptionType.BOOLEAN, "getAsBoolean");
+			narrowed(short.class, long.class, OptionType.INTEGER, "getAsLong");
+			narrowed(byte.class, long.class, OptionType.INTEGER, "getAsLong");
+			narrowed(float.class, double.class, OptionType.NUMBER, "getAsDouble");
+			getter(User.class, OptionType.USER, "getAsUser");
+			getter(Member.class, OptionType.USER, "getAsMember");
+			getter(Role.class, OptionType.ROLE, "getAsRole");
+			getter(IMentionable.class, OptionType.MENTIONABLE, "getAsMentionable");
+			getter(Message.Attachment.class, OptionType.ATTACHMENT, "getAsAttachment");
+			getter(GuildChannelUnion.class, OptionType.CHANNEL, "getAsChannel");
+			put(Channel.class, new Converter(OptionType.CHANNEL, converters.get(GuildChannelUnion.class).decoder
+					.asType(MethodType.methodType(Channel.class, OptionMapping.class))));
+			converters.put(Object.class, new Converter(OptionType.STRING, NATURAL));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+		register(char.class, OptionType.STRING, mapping -> mapping.getAsString().charAt(0));
+		register(TextChannel.class, OptionType.CHANNEL, mapping -> mapping.getAsChannel().asTextChannel());
+		register(List.class, OptionType.STRING, ArgumentConverters::split);
+		register(ArrayList.class, OptionType.STRING, ArgumentConverters::split);
+		register(Object[].class, OptionType.STRING, mapping -> split(mapping).toArray());
+	}
+
+	private ArgumentConverters() {}
+
+	/**
+	 * Registers how parameters of the given type are declared and decoded, replacing any previous converter.
+	 * Commands have to be registered after their parameter types. For primitive types the wrapper type is
+	 * registered as well.
+	 * @param type       The parameter type
+	 * @param optionType The option type commands with such a parameter are registered as
+	 * @param converter  Decodes the option the user provided
+	 */
+	public static <T> void register(Class<T> type, OptionType optionType, Function<OptionMapping, ? extends T> converter) {
+		MethodHandle decoder = APPLY.bindTo(converter)
+				.asType(MethodType.methodType(type, OptionMapping.class));
+		put(type, new Converter(optionType, decoder));
+	}
+
+	/**
+	 * @return The option type parameters of the given type are registered as, or null if the type has no converter
+	 */
+	public static OptionType getOptionType(Class<?> type) {
+		Converter converter = find(type);
+		return converter == null ? null : converter.optionType;
+	}
+
+	/**
+	 * @return {@code (OptionMapping)type}, falling back to the option's natural value cast to the type
+	 */
+	static MethodHandle decoder(Class<?> type) {
+		Converter converter = find(type);
+		if (converter != null)
+			return converter.decoder;
+		return NATURAL.asType(MethodType.methodType(type, OptionMapping.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> T convert(OptionMapping mapping, Class<T> type) throws Throwable {
+		Converter converter = find(type);
+		if (converter == null)
+			return type.cast(natural(mapping));
+		return (T) (Object) converter.boxed.invokeExact(mapping);
+	}
+
+	/**
+	 * Decodes the option as the type Discord sent it, as returned by {@link GenericCommandEvent#getArgs()}.
+	 */
+	static Object natural(OptionMapping mapping) {
+		return switch (mapping.getType()) {
+			case UNKNOWN, SUB_COMMAND, SUB_COMMAND_GROUP -> null;
+			case STRING -> mapping.getAsString();
+			case INTEGER -> mapping.getAsLong();
+			case BOOLEAN -> mapping.getAsBoolean();
+			case USER -> mapping.getAsUser();
+			case CHANNEL -> mapping.getAsChannel();
+			case ROLE -> mapping.getAsRole();
+			case MENTIONABLE -> mapping.getAsMentionable();
+			case NUMBER -> mapping.getAsDouble();
+			case ATTACHMENT -> mapping.getAsAttachment();
+		};
+	}
+
+	private static ArrayList<String> split(OptionMapping mapping) {
+		ArrayList<String> items = new ArrayList<>();
+		for (String item : mapping.getAsString().split(",")) {
+			String trimmed = item.trim();
+			if (!trimmed.isEmpty())
+				items.add(trimmed);
+		}
+		return items;
+	}
+
+	private static Converter find(Class<?> type) {
+		Converter converter = converters.get(type);
+		if (converter == null && type.isEnum())
+			converter = converters.computeIfAbsent(type, ArgumentConverters::enumConverter);
+		return converter;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Converter enumConverter(Class<?> type) {
+		Class<? extends Enum> enumType = (Class<? extends Enum>) type;
+		Function<OptionMapping, Object> converter = mapping -> Enum.valueOf(enumType, mapping.getAsString());
+		return new Converter(OptionType.STRING, APPLY.bindTo(converter)
+				.asType(MethodType.methodType(type, OptionMapping.class)));
+	}
+
+	private static void getter(Class<?> type, OptionType optionType, String name) throws ReflectiveOperationException {
+		put(type, new Converter(optionType, MethodHandles.publicLookup()
+				.findVirtual(OptionMapping.class, name, MethodType.methodType(type))));
+	}
+
+	private static void narrowed(Class<?> type, Class<?> source, OptionType optionType, String name) throws ReflectiveOperationException {
+		MethodHandle getter = MethodHandles.publicLookup().findVirtual(OptionMapping.class, name, MethodType.methodType(source));
+		put(type, new Converter(optionType, MethodHandles.explicitCastArguments(getter,
+				MethodType.methodType(type, OptionMapping.class))));
+	}
+
+	private static void put(Class<?> type, Converter converter) {
+		converters.put(type, converter);
+		if (type.isPrimitive()) {
+			Class<?> wrapper = MethodType.methodType(type).wrap().returnType();
+			converters.put(wrapper, new Converter(converter.optionType,
+					converter.decoder.asType(MethodType.methodType(wrapper, OptionMapping.class))));
+		}
+	}
+}
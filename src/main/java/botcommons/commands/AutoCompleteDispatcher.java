@@ -0,0 +1,206 @@
+package botcommons.commands;
+
+import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
+import net.dv8tion.jda.api.interactions.commands.Command.Choice;
+import net.dv8tion.jda.api.interactions.commands.build.OptionData;
+import net.dv8tion.jda.api.utils.TimeUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes autocomplete interactions to their handlers. Discord sends one interaction per typed character and ignores
+ * answers after three seconds, so work for a (user, command, option) is superseded by the next keystroke, requests
+ * past their deadline are dropped, and handlers may opt into a short-lived result cache. Superseding only applies
+ * when handlers run on an executor: under {@link ExecutionPolicy#inline()} every keystroke is completed in turn on
+ * the event thread, and only the deadline and the cache cut the work short.
+ */
+final class AutoCompleteDispatcher {
+	private static final Logger logger = LoggerFactory.getLogger(AutoCompleteDispatcher.class);
+	private static final int MAX_CACHED = 10_000;
+
+	// Full command name -> focused option name -> handler, with "" holding the handler for any option
+	private final Map<String, Map<String, Route>> handlers = new ConcurrentHashMap<>();
+	private final Map<InFlightKey, InFlight> inFlight = new ConcurrentHashMap<>();
+	private final Map<CacheKey, Cached> cache = new ConcurrentHashMap<>();
+	private volatile long deadlineMillis = 2500;
+
+	private record Route(AutoCompleteInvoker invoker, long cacheNanos) {
+	}
+
+	private record InFlightKey(long user, String command, String option) {
+	}
+
+	private record InFlight(long interaction, FutureTask<Void> task) {
+	}
+
+	private record CacheKey(String command, String option, String prefix) {
+	}
+
+	private record Cached(List<Choice> choices, long expiresAt) {
+	}
+
+	void setDeadline(long millis) {
+		this.deadlineMillis = millis;
+	}
+
+	void register(Class<?> holder) {
+		// Public handlers, including inherited ones, bound to this holder like its commands
+		for (Method method : holder.getMethods()) {
+			AutoCompleteHandler annotation = method.getAnnotation(AutoCompleteHandler.class);
+			if (annotation == null)
+				continue;
+			Route route = new Route(CommandCompiler.compileAutoComplete(holder, method), TimeUnit.MILLISECONDS.toNanos(annotation.cacheMillis()));
+			for (String command : annotation.value()) {
+				Map<String, Route> routes = handlers.computeIfAbsent(command.toLowerCase(Locale.ROOT), k -> new ConcurrentHashMap<>());
+				if (annotation.options().length == 0)
+					routes.putIfAbsent("", route);
+				for (String option : annotation.options())
+					routes.putIfAbsent(option, route);
+			}
+		}
+	}
+
+	boolean hasHandler(String command, String option) {
+		return find(command, option) != null;
+	}
+
+	void dispatch(CommandAutoCompleteInteractionEvent event, CommandMetrics.Stats stats, ExecutionPolicy policy) {
+		String command = event.getFullCommandName();
+		String option = event.getFocusedOption().getName();
+		Route route = find(command, option);
+
+		if (expired(event)) {
+			stats.autoCompleteExpired.increment();
+			return;
+		}
+
+		CacheKey cacheKey = null;
+		if (route.cacheNanos > 0) {
+			cacheKey = new CacheKey(command, option, event.getFocusedOption().getValue());
+			Cached cached = cache.get(cacheKey);
+			if (cached != null && cached.expiresAt - System.nanoTime() > 0) {
+				stats.autoCompleteCacheHits.increment();
+				event.replyChoices(cached.choices).queue();
+				return;
+			}
+		}
+
+		if (policy.isInline()) {
+			complete(event, route, cacheKey, stats, null);
+			return;
+		}
+
+		InFlightKey key = new InFlightKey(event.getUser().getIdLong(), command, option);
+		CacheKey finalCacheKey = cacheKey;
+		InFlight[] self = new InFlight[1];
+		FutureTask<Void> task = new FutureTask<>(() -> {
+			try {
+				complete(event, route, finalCacheKey, stats, key);
+			} finally {
+				inFlight.remove(key, self[0]);
+			}
+		}, null);
+		self[0] = new InFlight(event.getIdLong(), task);
+
+		// Counted here only: a superseded request is always cancelled, and returns quietly if it already started
+		InFlight previous = inFlight.put(key, self[0]);
+		if (previous != null && previous.task.cancel(true))
+			stats.autoCompleteSuperseded.increment();
+		try {
+			policy.executor().execute(task);
+		} catch (RejectedExecutionException e) {
+			inFlight.remove(key, self[0]);
+			logger.warn("Autocomplete executor rejected {}", command, e);
+		}
+	}
+
+	private void complete(CommandAutoCompleteInteractionEvent event, Route route, CacheKey cacheKey,
+						  CommandMetrics.Stats stats, InFlightKey key) {
+		// The request may have waited in the executor long enough to be superseded or to miss its deadline
+		if (key != null && superseded(key, event))
+			return;
+		if (expired(event)) {
+			stats.autoCompleteExpired.increment();
+			return;
+		}
+
+		stats.autoCompletes.increment();
+		long start = System.nanoTime();
+		Object result;
+		try {
+			result = route.invoker.complete(event);
+		} catch (Throwable e) {
+			if (Thread.currentThread().isInterrupted())
+				return;
+			stats.autoCompleteErrors.increment();
+			logger.error("Autocomplete handler failed for {}", event.getFullCommandName(), e);
+			String message = String.valueOf(e.getMessage());
+			event.replyChoiceStrings(message.substring(0, Math.min(message.length(), 15))).queue();
+			return;
+		} finally {
+			stats.record(CommandMetrics.Stage.AUTOCOMPLETE, System.nanoTime() - start);
+		}
+		if (result == null)
+			return;
+
+		List<Choice> choices = toChoices(result);
+		if (cacheKey != null)
+			cache(cacheKey, choices, route.cacheNanos);
+		if (key != null && superseded(key, event) || expired(event))
+			return;
+		event.replyChoices(choices).queue();
+	}
+
+	private Route find(String command, String option) {
+		Map<String, Route> routes = handlers.get(command);
+		if (routes == null)
+			routes = handlers.get(command.toLowerCase(Locale.ROOT));
+		if (routes == null)
+			return null;
+		Route route = routes.get(option);
+		return route != null ? route : routes.get("");
+	}
+
+	private boolean superseded(InFlightKey key, CommandAutoCompleteInteractionEvent event) {
+		InFlight latest = inFlight.get(key);
+		return latest != null && latest.interaction != event.getIdLong();
+	}
+
+	private boolean expired(CommandAutoCompleteInteractionEvent event) {
+		long created = (event.getIdLong() >>> TimeUtil.TIMESTAMP_OFFSET) + TimeUtil.DISCORD_EPOCH;
+		return System.currentTimeMillis() - created > deadlineMillis;
+	}
+
+	private void cache(CacheKey key, List<Choice> choices, long ttl) {
+		long now = System.nanoTime();
+		if (cache.size() >= MAX_CACHED) {
+			cache.values().removeIf(cached -> cached.expiresAt - now <= 0);
+			if (cache.size() >= MAX_CACHED)
+				cache.clear();
+		}
+		cache.put(key, new Cached(choices, now + ttl));
+	}
+
+	private static List<Choice> toChoices(Object result) {
+		Collection<?> values = result instanceof Object[] array ? Arrays.asList(array) : (Collection<?>) result;
+		List<Choice> choices = new ArrayList<>(Math.min(values.size(), OptionData.MAX_CHOICES));
+		for (Object value : values) {
+			if (choices.size() == OptionData.MAX_CHOICES)
+				break;
+			choices.add(value instanceof Choice choice ? choice : new Choice(String.valueOf(value), String.valueOf(value)));
+		}
+		return List.copyOf(choices);
+	}
+}
@@ -3,7 +3,27 @@ package botcommons.commands;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
+/**
+ * Marks a method taking a single {@link net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent}
+ * as the autocomplete handler for one or more commands. The method either replies itself and returns void, or returns
+ * its choices as a collection or array of {@link net.dv8tion.jda.api.interactions.commands.Command.Choice} or of
+ * values, in which case the library replies for it and can cache the result.
+ */
 @Retention(RetentionPolicy.RUNTIME)
 public @interface AutoCompleteHandler {
+	/**
+	 * The full names of the commands this handler completes, e.g. {@code "config"} or {@code "music play"}
+	 */
 	String[] value();
+
+	/**
+	 * The options this handler completes. Empty means every option without a more specific handler.
+	 */
+	String[] options() default {};
+
+	/**
+	 * How long returned choices are reused for the same command, option and typed prefix, in milliseconds. Only
+	 * enable this for handlers whose choices do not depend on the user or guild.
+	 */
+	long cacheMillis() default 0;
 }
@@ -0,0 +1,12 @@
+package botcommons.commands;
+
+import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
+
+/**
+ * An {@link AutoCompleteHandler} method compiled at registration, see {@link CommandCompiler#compileAutoComplete}.
+ * Returns the handler's choices, or null if the handler replied by itself.
+ */
+@FunctionalInterface
+interface AutoCompleteInvoker {
+	Object complete(CommandAutoCompleteInteractionEvent event) throws Throwable;
+}
@@ -23,4 +23,10 @@ public @interface Command {
 	InteractionContextType[] userContext() default {InteractionContextType.GUILD, InteractionContextType.BOT_DM};
 	Type type() default Type.SLASH;
 	IntegrationType[] integrationTypes() default {IntegrationType.GUILD_INSTALL};
+	RateLimit[] rateLimits() default {};
+	/**
+	 * Whether replies are ephemeral from the start, so the reply stays ephemeral even when the command is deferred
+	 * automatically before it called {@link ReplyContext#ephemeral()}
+	 */
+	boolean ephemeral() default false;
 }
@@ -0,0 +1,123 @@
+package botcommons.commands;
+
+import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+final class CommandCompiler {
+	private static final MethodHandle MAPPING;
+	private static final MethodHandle IS_NULL;
+
+	static {
+		try {
+			MAPPING = MethodHandles.lookup().findVirtual(GenericCommandEvent.class, "mapping",
+					MethodType.methodType(OptionMapping.class, int.class));
+			IS_NULL = MethodHandles.lookup().findStatic(Objects.class, "isNull",
+					MethodType.methodType(boolean.class, Object.class))
+					.asType(MethodType.methodType(boolean.class, OptionMapping.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	// One instance per holder class, shared by all of its command and autocomplete methods
+	private static final Map<Class<?>, Object> holders = new ConcurrentHashMap<>();
+
+	private CommandCompiler() {}
+
+	/**
+	 * Compiles the method into a {@link MethodHandle} of type {@code (GenericCommandEvent)void}. Every
+	 * {@link Param} parameter gets an extractor pre-bound to its option index and to the decoder registered in
+	 * {@link ArgumentConverters}, so primitives reach the method unboxed, and instance methods are bound to a
+	 * single instance of the holder, which may inherit the method, created here.
+	 */
+	static CommandInvoker compile(Class<?> holder, Method method, CommandInfo.Option[] options) {
+		MethodHandle target;
+		try {
+			target = MethodHandles.publicLookup().unreflect(method);
+			if (!Modifier.isStatic(method.getModifiers()))
+				target = target.bindTo(holder(holder));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Could not compile command method " + method + " of " + holder.getName(), e);
+		}
+
+		Class<?>[] params = method.getParameterTypes();
+		MethodHandle[] extractors = new MethodHandle[params.length];
+		int option = 0;
+		for (int i = 0; i < params.length; i++) {
+			if (params[i] == GenericCommandEvent.class) {
+				extractors[i] = MethodHandles.identity(GenericCommandEvent.class);
+				continue;
+			}
+			extractors[i] = extractor(params[i], options[option], option);
+			option++;
+		}
+
+		// (GenericCommandEvent, ..., GenericCommandEvent) -> (GenericCommandEvent), every slot reading the same event
+		MethodHandle filtered = MethodHandles.filterArguments(target, 0, extractors);
+		MethodHandle handle = MethodHandles.permuteArguments(filtered,
+						MethodType.methodType(filtered.type().returnType(), GenericCommandEvent.class), new int[params.length])
+				.asType(MethodType.methodType(void.class, GenericCommandEvent.class));
+
+		return event -> {
+			handle.invokeExact(event);
+		};
+	}
+
+	// (GenericCommandEvent)type: the decoded option, or its missing value when the interaction left it out
+	private static MethodHandle extractor(Class<?> type, CommandInfo.Option option, int index) {
+		Object missing;
+		try {
+			missing = GenericCommandEvent.missingValue(option, type);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid default value for option " + option.getName(), e);
+		}
+		MethodHandle fallback = missing == null ? MethodHandles.zero(type) : MethodHandles.constant(type, missing);
+		MethodHandle decoder = MethodHandles.guardWithTest(IS_NULL,
+				MethodHandles.dropArguments(fallback, 0, OptionMapping.class),
+				ArgumentConverters.decoder(type));
+		return MethodHandles.filterReturnValue(MethodHandles.insertArguments(MAPPING, 1, index), decoder);
+	}
+
+	/**
+	 * Compiles an {@link AutoCompleteHandler} method taking a single {@link CommandAutoCompleteInteractionEvent}.
+	 */
+	static AutoCompleteInvoker compileAutoComplete(Class<?> holder, Method method) {
+		if (method.getParameterCount() != 1 || method.getParameterTypes()[0] != CommandAutoCompleteInteractionEvent.class)
+			throw new IllegalArgumentException("AutoCompleteHandler must take a single CommandAutoCompleteInteractionEvent: " + method);
+		Class<?> returnType = method.getReturnType();
+		if (returnType != void.class && !returnType.isArray() && !Collection.class.isAssignableFrom(returnType))
+			throw new IllegalArgumentException("AutoCompleteHandler must return void, an array or a Collection: " + method);
+		MethodHandle target;
+		try {
+			target = MethodHandles.publicLookup().unreflect(method);
+			if (!Modifier.isStatic(method.getModifiers()))
+				target = target.bindTo(holder(holder));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Could not compile autocomplete handler " + method + " of " + holder.getName(), e);
+		}
+		// void handlers return null, anything else is boxed to Object
+		MethodHandle handle = target.asType(MethodType.methodType(Object.class, CommandAutoCompleteInteractionEvent.class));
+		return event -> (Object) handle.invokeExact(event);
+	}
+
+	static Object holder(Class<?> type) throws ReflectiveOperationException {
+		Object holder = holders.get(type);
+		if (holder == null) {
+			holder = type.getConstructor().newInstance();
+			Object existing = holders.putIfAbsent(type, holder);
+			if (existing != null)
+				holder = existing;
+		}
+		return holder;
+	}
+}
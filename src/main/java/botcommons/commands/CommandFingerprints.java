@@ -0,0 +1,79 @@
+package botcommons.commands;
+
+import botcommons.utilities.StringUtilities;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SHA-256 fingerprints of the serialized {@link CommandData} last pushed to Discord, stored in the bot's asset
+ * directory so unchanged command sets are not re-registered on every start. Each application has its own file, so
+ * bots sharing an asset directory, or a token switched to another application, never skip a registration.
+ */
+final class CommandFingerprints {
+	private static final Logger logger = LoggerFactory.getLogger(CommandFingerprints.class);
+	private static final Gson GSON = new Gson();
+
+	private CommandFingerprints() {}
+
+	static String key(CommandData data) {
+		return data.getType().name() + ":" + data.getName();
+	}
+
+	static Map<String, String> of(Collection<? extends CommandData> commands) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		Map<String, String> fingerprints = new TreeMap<>();
+		for (CommandData data : commands) {
+			byte[] hash = digest.digest(data.toData().toJson());
+			fingerprints.put(key(data), HexFormat.of().formatHex(hash));
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * @return The stored fingerprints, or null if nothing was registered yet or the file is unreadable
+	 */
+	static Map<String, String> load(long applicationId) {
+		Path path = path(applicationId);
+		if (!Files.exists(path))
+			return null;
+		try {
+			return GSON.fromJson(Files.readString(path), new TypeToken<TreeMap<String, String>>() {}.getType());
+		} catch (IOException | JsonParseException e) {
+			logger.warn("Could not read command fingerprints from {}, registering all commands", path, e);
+			return null;
+		}
+	}
+
+	static void save(long applicationId, Map<String, String> fingerprints) {
+		Path path = path(applicationId);
+		try {
+			Files.writeString(path, GSON.toJson(fingerprints), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			logger.warn("Could not write command fingerprints to {}", path, e);
+		}
+	}
+
+	private static Path path(long applicationId) {
+		return StringUtilities.getAssetPath(Path.of("command-fingerprints-" + applicationId + ".json"));
+	}
+}
@@ -1,12 +1,10 @@
 package botcommons.commands;
 
-import net.dv8tion.jda.api.entities.Message;
-import net.dv8tion.jda.api.entities.Role;
-import net.dv8tion.jda.api.entities.User;
-import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.interactions.IntegrationType;
 import net.dv8tion.jda.api.interactions.InteractionContextType;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.Method;
@@ -14,70 +12,68 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 
 @SuppressWarnings("unused")
 public class CommandInfo {
-	private static final HashMap<Class<?>, OptionType> optionTypeParams = new HashMap<>() {{
-		put(String.class, OptionType.STRING);
-		put(Integer.class, OptionType.INTEGER);
-		put(Boolean.class, OptionType.BOOLEAN);
-		put(Long.class, OptionType.INTEGER);
-		put(Double.class, OptionType.NUMBER);
-		put(Float.class, OptionType.NUMBER);
-		put(Short.class, OptionType.INTEGER);
-		put(Byte.class, OptionType.INTEGER);
-		put(Character.class, OptionType.STRING);
-		put(List.class, OptionType.STRING);
-		put(ArrayList.class, OptionType.STRING);
-		put(Object.class, OptionType.STRING);
-		put(Object[].class, OptionType.STRING);
-
-		put(User.class, OptionType.USER);
-		put(Role.class, OptionType.ROLE);
-		put(Message.Attachment.class, OptionType.ATTACHMENT);
-		put(TextChannel.class, OptionType.CHANNEL);
-	}};
+	// Keyed by holder too, since holders extending one base class share the inherited Method
+	private static final Map<Key, CommandInfo> cache = new ConcurrentHashMap<>();
+
 	/**
 	 * The command name. Should be unique, and lowercase
 	 */
-	public String name;
-	public String help;
-	public String[] aliases;
-	public CommandInfo.Option[] args;
-	public InteractionContextType[] userContext;
-	public String category;
-	public String permission;
-	public String usage = "";
-	public net.dv8tion.jda.api.interactions.commands.Command.Type commandType;
-	public IntegrationType[] integrationTypes;
-	public Method method;
-
-	public CommandInfo.Option getOption(String name) {
-		return Arrays.stream(args).filter(option -> option.name.equals(name)).findFirst().orElse(null);
+	public final String name;
+	/**
+	 * The name prefixed with the holder group, if it has one, e.g. {@code "music play"}
+	 */
+	public final String fullName;
+	public final String help;
+	public final String[] aliases;
+	public final CommandInfo.Option[] args;
+	public final InteractionContextType[] userContext;
+	public final String category;
+	public final String permission;
+	public final String usage;
+	public final net.dv8tion.jda.api.interactions.commands.Command.Type commandType;
+	public final IntegrationType[] integrationTypes;
+	public final boolean ephemeral;
+	public final Method method;
+	public final CommandInvoker invoker;
+	final RateLimiter[] rateLimiters;
+	// Resolved from permission at registration: owner-only commands, otherwise the permission the member needs
+	final boolean ownerOnly;
+	final Permission requiredPermission;
+	private final Map<String, Integer> optionIndexes;
+
+	private record Key(Class<?> holder, Method method) {
 	}
 
-	public static CommandInfo from(@Nullable Method command) {
-		if (command == null)
-			return null;
-
+	private CommandInfo(Class<?> holderClass, Method command, @Nullable CommandInvoker invoker) {
 		Command annotation = command.getAnnotation(Command.class);
 		if (annotation == null) {
 			throw new IllegalArgumentException("Command must have @Command annotation");
 		}
-		CommandInfo info = new CommandInfo();
-		info.name = annotation.name();
-		info.help = annotation.help();
-		info.aliases = annotation.aliases();
-		info.usage = annotation.usage();
-		info.userContext = annotation.userContext();
-		info.category = annotation.category();
-		info.permission = annotation.permission();
-		info.commandType = annotation.type();
-		info.integrationTypes = annotation.integrationTypes();
-		info.method = command;
+		this.name = annotation.name();
+		CommandHolder holder = holderClass.getAnnotation(CommandHolder.class);
+		this.fullName = holder == null || holder.group().equalsIgnoreCase("n/a") ? name : holder.group() + " " + name;
+		this.help = annotation.help();
+		this.aliases = annotation.aliases();
+		this.usage = annotation.usage();
+		this.userContext = annotation.userContext();
+		this.category = annotation.category();
+		this.permission = annotation.permission();
+		this.ownerOnly = permission.equals("owner");
+		this.requiredPermission = ownerOnly ? null : resolvePermission(permission, holderClass, command);
+		this.commandType = annotation.type();
+		this.integrationTypes = annotation.integrationTypes();
+		this.ephemeral = annotation.ephemeral();
+		this.method = command;
+		this.rateLimiters = Arrays.stream(annotation.rateLimits()).map(RateLimiter::new).toArray(RateLimiter[]::new);
 
 		List<Option> args = new ArrayList<>();
+		Map<String, Integer> indexes = new HashMap<>();
 		for (var param : command.getParameters()) {
 			if (param.getType() == GenericCommandEvent.class)
 				continue;
@@ -86,18 +82,75 @@ public class CommandInfo {
 			if (paramAnnotation == null) {
 				throw new IllegalArgumentException("Parameter must have @Param annotation");
 			}
+			OptionType type = ArgumentConverters.getOptionType(param.getType());
+			String[] choices = paramAnnotation.choices();
+			Object[] constants = param.getType().getEnumConstants();
+			// Enum parameters offer their constants as choices unless told otherwise
+			if (choices.length == 0 && !paramAnnotation.autocomplete() && constants != null && constants.length <= OptionData.MAX_CHOICES)
+				choices = Arrays.stream(constants).map(constant -> ((Enum<?>) constant).name()).toArray(String[]::new);
 			Option option = new Option()
 					.description(paramAnnotation.description())
-					.type(optionTypeParams.getOrDefault(param.getType(), paramAnnotation.type()))
+					.type(type != null ? type : paramAnnotation.type())
 					.required(paramAnnotation.required())
 					.autocomplete(paramAnnotation.autocomplete())
 					.name(paramAnnotation.name().isEmpty() ? param.getName() : paramAnnotation.name())
-					.choices(paramAnnotation.choices());
+					.choices(choices);
 
+			indexes.put(option.getName(), args.size());
 			args.add(option);
 		}
-		info.args = args.toArray(new CommandInfo.Option[0]);
-		return info;
+		this.args = args.toArray(new CommandInfo.Option[0]);
+		this.optionIndexes = Map.copyOf(indexes);
+		this.invoker = invoker != null ? invoker : CommandCompiler.compile(holderClass, command, this.args);
+	}
+
+	public CommandInfo.Option getOption(String name) {
+		Integer index = optionIndexes.get(name);
+		return index == null ? null : args[index];
+	}
+
+	private static Permission resolvePermission(String permission, Class<?> holder, Method command) {
+		try {
+			return Permission.valueOf(permission);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown permission " + permission + " on command "
+					+ holder.getName() + "." + command.getName(), e);
+		}
+	}
+
+	/**
+	 * @return The position of the option in {@link #args}, or -1 if the command has no such option
+	 */
+	int indexOf(String name) {
+		Integer index = optionIndexes.get(name);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the descriptor for a command method declared in its own holder. Descriptors are built once per method
+	 * and shared afterwards.
+	 */
+	public static CommandInfo from(@Nullable Method command) {
+		if (command == null)
+			return null;
+
+		return from(command.getDeclaringClass(), command);
+	}
+
+	/**
+	 * Returns the descriptor for a command method of the given holder, which may inherit it. The holder supplies the
+	 * group and the instance the command runs on.
+	 */
+	public static CommandInfo from(Class<?> holder, Method command) {
+		return cache.computeIfAbsent(new Key(holder, command), key -> new CommandInfo(holder, command, null));
+	}
+
+	/**
+	 * Returns the descriptor for a command method of the given holder, using the given invoker rather than compiling
+	 * one.
+	 */
+	public static CommandInfo from(Class<?> holder, Method command, CommandInvoker invoker) {
+		return cache.computeIfAbsent(new Key(holder, command), key -> new CommandInfo(holder, command, invoker));
 	}
 
 	public static CommandInfo from(GenericCommandEvent event) {
@@ -105,7 +158,7 @@ public class CommandInfo {
 		String command = sub ? event.getCommandName() + (event.getSubcommandGroup()!=null? " " + event.getSubcommandGroup() + " ": " ") +
 				event.getSubcommandName() : event.getCommandName();
 
-		return from(CommandManager.getCommand(command));
+		return CommandManager.getCommandInfo(command);
 	}
 
 
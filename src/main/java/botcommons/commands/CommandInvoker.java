@@ -0,0 +1,9 @@
+package botcommons.commands;
+
+/**
+ * A {@link Command} method bound to everything it needs except the event, so dispatch is a single call.
+ */
+@FunctionalInterface
+public interface CommandInvoker {
+	void invoke(GenericCommandEvent event) throws Throwable;
+}
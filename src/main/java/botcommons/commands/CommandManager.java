@@ -2,11 +2,8 @@ package botcommons.commands;
 
 import botcommons.config.Config;
 import net.dv8tion.jda.api.JDA;
-import net.dv8tion.jda.api.Permission;
-import net.dv8tion.jda.api.entities.Message;
-import net.dv8tion.jda.api.entities.Role;
-import net.dv8tion.jda.api.entities.User;
-import net.dv8tion.jda.api.entities.channel.Channel;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.GenericContextInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
@@ -14,87 +11,200 @@ import net.dv8tion.jda.api.events.session.ReadyEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.interactions.IntegrationType;
 import net.dv8tion.jda.api.interactions.InteractionContextType;
-import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.*;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import net.dv8tion.jda.api.utils.TimeUtil;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
 public class CommandManager extends ListenerAdapter {
 	private static final HashMap<CommandInfo, Method> commands = new HashMap<>();
 	private static final HashMap<String, List<Map.Entry<CommandInfo, Method>>> subcommands = new HashMap<>();
+	// Case-folded "name", "alias" and "group sub" paths, rebuilt whenever commands are added
+	private static volatile Map<String, CommandInfo> routes = Map.of();
+	private static Map<Class<?>, GeneratedCommands> generated;
+	private static final AutoCompleteDispatcher autoComplete = new AutoCompleteDispatcher();
 	static Logger logger = LoggerFactory.getLogger(CommandManager.class);
+	private static final CommandMetrics metrics = new CommandMetrics();
+	private static final int MAX_INDIVIDUAL_UPDATES = 10;
+	private static volatile long deferThresholdMillis = 2000;
+	private static final long NO_OWNER = -1;
+	private static volatile Owner owner;
+	private static final AtomicBoolean registered = new AtomicBoolean();
 
 	private CommandManager() {}
 
-	private static Function<GenericCommandEvent, Boolean> commandRunCheck = ($) -> true;
+	private record Middleware(String name, CommandMiddleware middleware) {
+	}
+
+	// Replaced as a whole when middleware is added, so a dispatch always walks one consistent chain
+	private static volatile Middleware[] middleware = new Middleware[0];
+	private static final String RUN_CHECK = "run-check";
+	private static volatile ExecutionPolicy executionPolicy = ExecutionPolicy.inline();
 
 	public static void init(JDA jda, Function<GenericCommandEvent, Boolean> commandRunCheck) {
 		init(jda);
-		CommandManager.commandRunCheck = commandRunCheck;
+		setRunCheck(commandRunCheck);
+	}
+
+	public static void init(JDA jda, Function<GenericCommandEvent, Boolean> commandRunCheck, ExecutionPolicy executionPolicy) {
+		init(jda, commandRunCheck);
+		CommandManager.executionPolicy = executionPolicy;
+	}
+
+	public static void init(JDA jda, ExecutionPolicy executionPolicy) {
+		init(jda);
+		CommandManager.executionPolicy = executionPolicy;
 	}
 
 	public static void init(JDA jda) {
 		jda.addEventListener(new CommandManager());
 	}
 
-	public static void addCommands(Class<?>... holders) {
-		List<Object> ignored = new ArrayList<>();
+	public static void init(ShardManager shardManager, Function<GenericCommandEvent, Boolean> commandRunCheck) {
+		init(shardManager);
+		setRunCheck(commandRunCheck);
+	}
+
+	public static void init(ShardManager shardManager, Function<GenericCommandEvent, Boolean> commandRunCheck, ExecutionPolicy executionPolicy) {
+		init(shardManager, commandRunCheck);
+		CommandManager.executionPolicy = executionPolicy;
+	}
+
+	public static void init(ShardManager shardManager, ExecutionPolicy executionPolicy) {
+		init(shardManager);
+		CommandManager.executionPolicy = executionPolicy;
+	}
+
+	/**
+	 * Listens on every shard of the manager. Global commands are registered once, by the first shard to become ready.
+	 */
+	public static void init(ShardManager shardManager) {
+		shardManager.addEventListener(new CommandManager());
+	}
+
+	/**
+	 * Appends a middleware to the chain that runs before every command. The name identifies its timings in
+	 * {@link CommandMetrics.Stats#getMiddlewareLatency(String)}.
+	 */
+	public static synchronized void addMiddleware(String name, CommandMiddleware middleware) {
+		Middleware[] chain = CommandManager.middleware;
+		for (Middleware existing : chain) {
+			if (existing.name.equals(name))
+				throw new IllegalArgumentException("Middleware " + name + " was already added");
+		}
+		Middleware[] next = Arrays.copyOf(chain, chain.length + 1);
+		next[chain.length] = new Middleware(name, middleware);
+		CommandManager.middleware = next;
+	}
+
+	// The run check always runs first, and initializing again replaces it rather than adding a second one
+	private static synchronized void setRunCheck(Function<GenericCommandEvent, Boolean> commandRunCheck) {
+		List<Middleware> next = new ArrayList<>();
+		next.add(new Middleware(RUN_CHECK, CommandMiddleware.of(commandRunCheck)));
+		for (Middleware existing : CommandManager.middleware) {
+			if (!existing.name.equals(RUN_CHECK))
+				next.add(existing);
+		}
+		CommandManager.middleware = next.toArray(Middleware[]::new);
+	}
+
+	public static synchronized void addCommands(Class<?>... holders) {
 		for (var holder : holders) {
-			if (ignored.contains(holder)) continue;
-			for (var cmd : holder.getMethods()) {
-				if (cmd.isAnnotationPresent(Command.class)) {
-					CommandInfo info = CommandInfo.from(cmd);
-					CommandManager.commands.put(info, cmd);
-					if (info.commandType!= net.dv8tion.jda.api.interactions.commands.Command.Type.SLASH)
-						ignored.add(cmd);
-				}
-			}
 			CommandHolder meta = holder.getAnnotation(CommandHolder.class);
 			if (meta == null) {
 				throw new IllegalArgumentException("MethodCommandHolder annotation not found on class " + holder.getName());
 			}
-			if (meta.group().equalsIgnoreCase("n/a")) {
-				for (var cmd : holder.getMethods()) {
-					if (cmd.isAnnotationPresent(Command.class)) {
-						CommandInfo info = CommandInfo.from(cmd);
-						CommandManager.commands.put(info, cmd);
-					}
-				}
-			} else {
-				addSubcommands(holder);
-				continue;
-			}
+			List<CommandInfo> infos = commandsOf(holder);
+			autoComplete.register(holder);
+			for (CommandInfo info : infos)
+				CommandManager.commands.put(info, info.method);
+			if (!meta.group().equalsIgnoreCase("n/a"))
+				addSubcommands(meta.group(), infos);
+		}
+		rebuildRoutes();
+	}
 
-			for (var cmd : holder.getMethods()) {
-				if (cmd.isAnnotationPresent(Command.class)) {
-					CommandInfo info = CommandInfo.from(cmd);
-					CommandManager.commands.put(info, cmd);
-				}
+	/**
+	 * Registers every holder that has a registry generated by the BotCommons annotation processor on the classpath.
+	 */
+	public static synchronized void addGeneratedCommands() {
+		addCommands(generatedCommands().keySet().toArray(Class<?>[]::new));
+	}
+
+	private static List<CommandInfo> commandsOf(Class<?> holder) {
+		List<CommandInfo> infos = new ArrayList<>();
+		GeneratedCommands generated = generatedCommands().get(holder);
+		if (generated != null) {
+			try {
+				for (var entry : generated.commands(CommandCompiler::holder))
+					infos.add(CommandInfo.from(holder, entry.method(), entry.invoker()));
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Generated command registry for " + holder.getName() + " is out of date", e);
 			}
+			return infos;
 		}
+		for (var cmd : holder.getMethods()) {
+			if (cmd.isAnnotationPresent(Command.class))
+				infos.add(CommandInfo.from(holder, cmd));
+		}
+		return infos;
 	}
 
-	private static void addSubcommands(Class<?> holder) {
-		CommandHolder meta = holder.getAnnotation(CommandHolder.class);
-		if (meta == null) {
-			throw new IllegalArgumentException("MethodCommandHolder annotation not found on class " + holder.getName());
+	private static Map<Class<?>, GeneratedCommands> generatedCommands() {
+		if (generated == null) {
+			Map<Class<?>, GeneratedCommands> found = new HashMap<>();
+			for (GeneratedCommands registry : ServiceLoader.load(GeneratedCommands.class))
+				found.put(registry.holder(), registry);
+			generated = found;
 		}
-		if (meta.group().equalsIgnoreCase("n/a")) {
-			throw new IllegalArgumentException("MethodCommandHolder annotation group is not set to a valid value");
+		return generated;
+	}
+
+	private static void addSubcommands(String parent, List<CommandInfo> infos) {
+		for (CommandInfo info : infos) {
+			subcommands.putIfAbsent(parent, new ArrayList<>());
+			subcommands.get(parent).add(new AbstractMap.SimpleEntry<>(info, info.method));
 		}
-		String parent = meta.group();
-		for (var cmd : holder.getMethods()) {
-			if (cmd.isAnnotationPresent(Command.class)) {
-				CommandInfo info = CommandInfo.from(cmd);
-				subcommands.putIfAbsent(parent, new ArrayList<>());
-				subcommands.get(parent).add(new AbstractMap.SimpleEntry<>(info, cmd));
+	}
+
+	private static void rebuildRoutes() {
+		Map<String, CommandInfo> table = new HashMap<>();
+		// Direct names and aliases take priority over subcommand paths
+		for (CommandInfo info : commands.keySet()) {
+			route(table, info.name, info);
+			for (String alias : info.aliases)
+				route(table, alias, info);
+		}
+		for (var entry : subcommands.entrySet()) {
+			String group = entry.getKey();
+			for (var sub : entry.getValue()) {
+				CommandInfo info = sub.getKey();
+				if (info.name.equalsIgnoreCase(group))
+					route(table, group, info);
+				route(table, group + " " + info.name, info);
+				for (String alias : info.aliases)
+					route(table, group + " " + alias, info);
 			}
 		}
+		routes = Map.copyOf(table);
+	}
+
+	private static void route(Map<String, CommandInfo> table, String path, CommandInfo info) {
+		table.putIfAbsent(path.toLowerCase(Locale.ROOT), info);
 	}
 
 	private static InteractionContextType[] getSubcommandContexts(List<Map.Entry<CommandInfo, Method>> subcommands) {
@@ -108,6 +218,12 @@ public class CommandManager extends ListenerAdapter {
 
 	@Override
 	public void onReady(@NotNull ReadyEvent event) {
+		// Global commands belong to the application, so one shard registering them is enough
+		if (registered.compareAndSet(false, true))
+			registerCommands(event.getJDA());
+	}
+
+	private static List<CommandData> buildCommandData() {
 		List<CommandData> commandData = new ArrayList<>();
 		for (var entry : commands.entrySet()) {
 			switch (entry.getKey().commandType) {
@@ -115,12 +231,7 @@ public class CommandManager extends ListenerAdapter {
 					CommandInfo info = entry.getKey();
 					SlashCommandData d = Commands.slash(info.name, info.help).setContexts(info.userContext).setIntegrationTypes(info.integrationTypes);
 					if (info.args != null)
-						Arrays.stream(info.args).forEachOrdered(option ->
-								d.addOptions(new OptionData(
-										option.getType(), option.getName(), option.getDescription(),
-										option.isRequired(), option.isAutocomplete())
-										.addChoices(option.getChoices().stream().map(choice ->
-												new net.dv8tion.jda.api.interactions.commands.Command.Choice(choice, choice)).toList())));
+						Arrays.stream(info.args).forEachOrdered(option -> d.addOptions(optionData(option)));
 
 					commandData.add(d);
 				}
@@ -143,224 +254,378 @@ public class CommandManager extends ListenerAdapter {
 				CommandInfo info = sub.getKey();
 				SubcommandData subData = new SubcommandData(info.name, info.help);
 				if (info.args != null) {
-					Arrays.stream(info.args).forEachOrdered(option ->
-							subData.addOption(option.getType(), option.getName(), option.getDescription(),
-									option.isRequired(), option.isAutocomplete()));
+					Arrays.stream(info.args).forEachOrdered(option -> subData.addOptions(optionData(option)));
 				}
 				subcommandData.add(subData);
 			}
+			// Holder methods come in no particular order, and the fingerprint must not depend on it
+			subcommandData.sort(Comparator.comparing(SubcommandData::getName));
 
 			d.addSubcommands(subcommandData);
 			commandData.add(d);
 		}
 
-		List<CommandData> confirmedData = new ArrayList<>();
-		for (var dad : commandData) {
-			if (confirmedData.stream().noneMatch(data1 -> data1.getName().equals(dad.getName()) ||
-					dad.getName().startsWith(data1.getName())))
-				confirmedData.add(dad);
+		// Keep the first command registered under each type and name
+		Map<String, CommandData> confirmedData = new LinkedHashMap<>();
+		for (var data : commandData)
+			confirmedData.putIfAbsent(CommandFingerprints.key(data), data);
+		return new ArrayList<>(confirmedData.values());
+	}
+
+	// Top-level and subcommand options alike, with their choices, such as the constants of an enum parameter
+	private static OptionData optionData(CommandInfo.Option option) {
+		return new OptionData(option.getType(), option.getName(), option.getDescription(), option.isRequired(), option.isAutocomplete())
+				.addChoices(option.getChoices().stream().map(choice ->
+						new net.dv8tion.jda.api.interactions.commands.Command.Choice(choice, choice)).toList());
+	}
+
+	private static void registerCommands(JDA jda) {
+		List<CommandData> commandData = buildCommandData();
+		Map<String, String> fingerprints = CommandFingerprints.of(commandData);
+		long applicationId = jda.getSelfUser().getApplicationIdLong();
+		Map<String, String> stored = CommandFingerprints.load(applicationId);
+
+		if (fingerprints.equals(stored)) {
+			logger.debug("Commands unchanged since last registration, skipping update");
+			return;
+		}
+
+		List<CommandData> changed = stored == null ? commandData : commandData.stream()
+				.filter(data -> !Objects.equals(stored.get(CommandFingerprints.key(data)), fingerprints.get(CommandFingerprints.key(data))))
+				.toList();
+		Set<String> removed = new HashSet<>(stored == null ? Set.of() : stored.keySet());
+		removed.removeAll(fingerprints.keySet());
+
+		// Individual upserts count against the per-command creation limit, so large changes use one bulk overwrite
+		if (stored == null || changed.size() + removed.size() > MAX_INDIVIDUAL_UPDATES) {
+			jda.updateCommands().addCommands(commandData).queue(commands1 -> {
+				logger.debug("Successfully registered {} commands", commands1.size());
+				for (var command : commands1) {
+					logger.debug("Registered command: {}", command.getName());
+				}
+				CommandFingerprints.save(applicationId, fingerprints);
+			}, CommandManager::registrationFailed);
+			return;
 		}
 
-		event.getJDA().updateCommands().addCommands(confirmedData).queue(commands1 -> {
-			logger.debug("Successfully registered {} commands", commands1.size());
-			for (var command : commands1) {
-				logger.debug("Registered command: {}", command.getName());
+		jda.retrieveCommands().queue(existing -> {
+			List<RestAction<?>> actions = new ArrayList<>();
+			for (var data : changed)
+				actions.add(jda.upsertCommand(data));
+			for (var command : existing) {
+				if (removed.contains(command.getType().name() + ":" + command.getName()))
+					actions.add(jda.deleteCommandById(command.getId()));
+			}
+			if (actions.isEmpty()) {
+				CommandFingerprints.save(applicationId, fingerprints);
+				return;
 			}
-		});
+			RestAction.allOf(actions).queue(done -> {
+				logger.debug("Updated {} commands and deleted {} commands", changed.size(), actions.size() - changed.size());
+				CommandFingerprints.save(applicationId, fingerprints);
+			}, CommandManager::registrationFailed);
+		}, CommandManager::registrationFailed);
+	}
+
+	// Lets the next shard that becomes ready try again
+	private static void registrationFailed(Throwable error) {
+		registered.set(false);
+		logger.error("Failed to register commands", error);
 	}
 
 	@Override
 	public void onSlashCommandInteraction(@NotNull SlashCommandInteractionEvent slash) {
-		GenericCommandEvent event = GenericCommandEvent.of(slash);
-		CommandInfo info = CommandInfo.from(event);
+		submit(GenericCommandEvent.of(slash), slash.getFullCommandName());
+	}
 
-		if (!commandRunCheck.apply(event)) {
-			if (!event.getSlash().isAcknowledged()) {
-				event.replyError("There was an issue.").ephemeral().finish();
-			}
+	@Override
+	public void onGenericContextInteraction(@NotNull GenericContextInteractionEvent<?> generic) {
+		submit(GenericCommandEvent.of(generic), generic.getFullCommandName());
+	}
+
+	private static void submit(GenericCommandEvent event, String name) {
+		long start = System.nanoTime();
+		CommandInfo info = getCommandInfo(name);
+		event.setCommandInfo(info);
+		long now = System.nanoTime();
+		if (info == null) {
+			metrics.unknownCommand();
+			event.replyError("Command not found").finish();
+			return;
+		}
+		CommandMetrics.Stats stats = metrics.stats(info.fullName);
+		stats.record(CommandMetrics.Stage.LOOKUP, now - start);
+		event.replyContext.track(stats);
+		if (info.ephemeral)
+			event.replyContext.ephemeral();
+
+		// Rate limits are enforced before anything is handed to the executor
+		long wait = rateLimit(info, event, now);
+		if (wait > 0) {
+			stats.rateLimited.increment();
+			event.replyError("You are doing that too fast, try again in " +
+					Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999)) + " seconds.").ephemeral().finish();
 			return;
 		}
 
-		Method cmd = getCommand(slash.getFullCommandName());
+		ExecutionPolicy policy = executionPolicy;
+		if (policy.isInline()) {
+			dispatch(event, info, stats, policy, () -> {});
+			return;
+		}
 
-		if (checks(info, event, cmd)) return;
+		Guild guild = event.getGuild();
+		long guildId = guild == null ? 0 : guild.getIdLong();
+		long userId = event.getUser().getIdLong();
+		if (!policy.tryAcquire(guildId, userId)) {
+			event.replyError("Too many commands are running right now, please try again shortly.").ephemeral().finish();
+			return;
+		}
 
 		try {
-			List<Object> args = new ArrayList<>();
-			args.add(event);
-			for (var option : info.args) {
-				args.add(event.getArg(option.getName(), typeMap.get(option.getType())));
+			// The slots stay taken until the command ran or was stopped, even when middleware completes later
+			policy.executor().execute(() -> dispatch(event, info, stats, policy, () -> policy.release(guildId, userId)));
+		} catch (RejectedExecutionException e) {
+			policy.release(guildId, userId);
+			logger.warn("Command executor rejected {}", name, e);
+			event.replyError("The bot is shutting down, please try again later.").ephemeral().finish();
+		}
+	}
+
+	// A call takes a token from every limiter or from none, so a rejected call does not count against the others
+	private static long rateLimit(CommandInfo info, GenericCommandEvent event, long now) {
+		RateLimiter[] limiters = info.rateLimiters;
+		for (int i = 0; i < limiters.length; i++) {
+			long wait = limiters[i].tryAcquire(rateLimitKey(limiters[i], event), now);
+			if (wait > 0) {
+				for (int j = 0; j < i; j++)
+					limiters[j].refund(rateLimitKey(limiters[j], event));
+				return wait;
 			}
-			if (cmd != null)
-				cmd.invoke(null, args.toArray());
-			else
-				event.replyError("Could not find the requested command.").finish();
-		} catch (Exception e) {
-			e.printStackTrace();
-			event.replyError("An error occurred while executing this command");
-			if (e.getMessage() != null)
-				event.replyError(e.getMessage().substring(0, Math.min(e.getMessage().length(), 2000))).finish();
 		}
+		return 0;
 	}
 
-	@Override
-	public void onGenericContextInteraction(@NotNull GenericContextInteractionEvent<?> generic) {
-		GenericCommandEvent event = GenericCommandEvent.of(generic);
-		CommandInfo info = CommandInfo.from(event);
+	private static long rateLimitKey(RateLimiter limiter, GenericCommandEvent event) {
+		return switch (limiter.scope) {
+			case USER -> event.getUser().getIdLong();
+			case GUILD -> event.getGuild() != null ? event.getGuild().getIdLong() : event.getUser().getIdLong();
+			case COMMAND -> 0L;
+		};
+	}
 
-		if (!commandRunCheck.apply(event)) {
-			if (!event.getSlash().isAcknowledged()) {
-				event.replyError("There was an issue.").ephemeral().finish();
+	private static void dispatch(GenericCommandEvent event, CommandInfo info, CommandMetrics.Stats stats,
+								 ExecutionPolicy policy, Runnable done) {
+		watch(event, stats);
+		proceed(event, info, stats, policy, middleware, 0, done);
+	}
+
+	// Runs the chain from index on. Decisions that are already complete continue on this thread, the others
+	// resume on the policy's executor (or the completing thread when inline) once they complete.
+	private static void proceed(GenericCommandEvent event, CommandInfo info, CommandMetrics.Stats stats,
+								ExecutionPolicy policy, Middleware[] chain, int index, Runnable done) {
+		for (; index < chain.length; index++) {
+			Middleware step = chain[index];
+			long start = System.nanoTime();
+			CompletableFuture<Boolean> decision;
+			try {
+				decision = step.middleware.handle(event);
+			} catch (Throwable e) {
+				decision = CompletableFuture.failedFuture(e);
 			}
-			return;
-		}
 
-		Method cmd = getCommand(generic.getFullCommandName());
+			if (!decision.isDone()) {
+				int next = index + 1;
+				CompletableFuture<Boolean> pending = decision;
+				Runnable resume = () -> {
+					stats.recordMiddleware(step.name, System.nanoTime() - start);
+					if (accepted(event, stats, step, pending))
+						proceed(event, info, stats, policy, chain, next, done);
+					else
+						done.run();
+				};
+				pending.whenComplete((value, error) -> {
+					if (policy.isInline()) {
+						resume.run();
+						return;
+					}
+					try {
+						policy.executor().execute(resume);
+					} catch (RejectedExecutionException e) {
+						done.run();
+						logger.warn("Command executor rejected {}", info.fullName, e);
+					}
+				});
+				return;
+			}
 
-		if (checks(info, event, cmd)) return;
+			stats.recordMiddleware(step.name, System.nanoTime() - start);
+			if (!accepted(event, stats, step, decision)) {
+				done.run();
+				return;
+			}
+		}
 
 		try {
-			List<Object> args = new ArrayList<>();
-			args.add(event);
-			for (var option : info.args) {
-				args.add(event.getArg(option.getName(), typeMap.get(option.getType())));
+			execute(event, info, stats);
+		} finally {
+			done.run();
+		}
+	}
+
+	private static boolean accepted(GenericCommandEvent event, CommandMetrics.Stats stats, Middleware step,
+									CompletableFuture<Boolean> decision) {
+		boolean accepted;
+		try {
+			accepted = Boolean.TRUE.equals(decision.join());
+		} catch (CompletionException | CancellationException e) {
+			logger.error("Middleware {} failed for {}", step.name, stats.getCommand(), e.getCause() != null ? e.getCause() : e);
+			accepted = false;
+		}
+		if (!accepted) {
+			stats.runCheckRejections.increment();
+			if (event.replyContext.needsReply()) {
+				event.replyError("There was an issue.").ephemeral().finish();
 			}
-			if (cmd != null)
-				cmd.invoke(null, args.toArray());
-			else
-				event.replyError("Could not find the requested command.").finish();
-		} catch (Exception e) {
+		}
+		return accepted;
+	}
+
+	private static void execute(GenericCommandEvent event, CommandInfo info, CommandMetrics.Stats stats) {
+		long start = System.nanoTime();
+		boolean failed = checks(info, event);
+		long now = System.nanoTime();
+		stats.record(CommandMetrics.Stage.PERMISSION, now - start);
+		if (failed) {
+			stats.checkFailures.increment();
+			return;
+		}
+
+		start = now;
+		stats.invocations.increment();
+		try {
+			event.mappings();
+			now = System.nanoTime();
+			stats.record(CommandMetrics.Stage.DECODE, now - start);
+			start = now;
+			info.invoker.invoke(event);
+		} catch (Throwable e) {
+			stats.errors.increment();
 			e.printStackTrace();
 			event.replyError("An error occurred while executing this command");
 			if (e.getMessage() != null)
 				event.replyError(e.getMessage().substring(0, Math.min(e.getMessage().length(), 2000))).finish();
+		} finally {
+			stats.record(CommandMetrics.Stage.EXECUTE, System.nanoTime() - start);
 		}
 	}
 
+	private static void watch(GenericCommandEvent event, CommandMetrics.Stats stats) {
+		long threshold = deferThresholdMillis;
+		if (threshold <= 0)
+			return;
+		ReplyContext reply = event.replyContext;
+		long created = (reply.getJdaEvent().getIdLong() >>> TimeUtil.TIMESTAMP_OFFSET) + TimeUtil.DISCORD_EPOCH;
+		long delay = Math.max(0, created + threshold - System.currentTimeMillis());
+		reply.watch(event.getJDA().getGatewayPool().schedule(() -> {
+			if (reply.defer())
+				stats.autoDeferred.increment();
+		}, delay, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Sets how long after an interaction was created a command may run without replying before it is deferred
+	 * automatically. Zero or a negative duration disables the watchdog. The deferral is ephemeral only if the
+	 * command declared {@link Command#ephemeral()} or already called {@link ReplyContext#ephemeral()}, since a
+	 * deferred reply cannot change its visibility afterwards.
+	 * <p>
+	 * The watchdog runs while the command may still be running, so commands must reply through their
+	 * {@link ReplyContext}, which never races with it. A command that replies on the JDA event directly, e.g. with
+	 * {@code event.getSlash().reply(...)}, can lose to the deferral and fail as already acknowledged. Bots with
+	 * such commands should disable the watchdog.
+	 */
+	public static void setDeferThreshold(Duration threshold) {
+		deferThresholdMillis = threshold.toMillis();
+	}
+
+	public static CommandMetrics getMetrics() {
+		return metrics;
+	}
+
 	@Override
 	public void onCommandAutoCompleteInteraction(CommandAutoCompleteInteractionEvent event) {
-		CommandInfo info = CommandInfo.from(getCommand(event.getFullCommandName()));
+		CommandInfo info = getCommandInfo(event.getFullCommandName());
 		if (info == null) {
 			event.replyChoiceStrings("Command not found").queue();
 			return;
 		}
-		Class<?> clazz = info.method.getDeclaringClass();
-
-		Method autocompleteMethod = findAutoCompleteMethod(clazz, event.getFullCommandName());
 
-		if (autocompleteMethod == null) {
+		if (!autoComplete.hasHandler(event.getFullCommandName(), event.getFocusedOption().getName())) {
 			event.replyChoiceStrings("No autocomplete handler found for this command").queue();
 			return;
 		}
 
-		try {
-			autocompleteMethod.invoke(clazz.getConstructors()[0].newInstance(), event);
-		} catch (Exception e) {
-			e.printStackTrace();
-			event.replyChoiceStrings(e.getMessage().substring(0, Math.min(e.getMessage().length(), 15))).queue();
-		}
+		autoComplete.dispatch(event, metrics.stats(info.fullName), executionPolicy);
+	}
+
+	/**
+	 * Sets how long after an autocomplete interaction was created its response is still worth computing. Discord
+	 * discards responses after three seconds.
+	 */
+	public static void setAutoCompleteDeadline(Duration deadline) {
+		autoComplete.setDeadline(deadline.toMillis());
 	}
 
-	private static boolean checks(CommandInfo info, GenericCommandEvent event, Method cmd) {
-		if (cmd == null || (event.getMember() == null && event.isGuild())) {
+	private static boolean checks(CommandInfo info, GenericCommandEvent event) {
+		Member member = event.getMember();
+		if (info == null || (member == null && event.isGuild())) {
 			event.replyError("Command not found").finish();
 			return true;
 		}
-		if (Config.getInstance().get("owner-id").equals(event.getUser().getId())) {
+		if (event.getUser().getIdLong() == ownerId()) {
 			return false;
 		}
-		if (Objects.equals(info.permission, "owner")) {
-			if (!Config.getInstance().get("owner-id").equals(event.getUser().getId())) {
-				event.replyError("You do not have permission to use this command").finish();
-				return true;
-			}
-			return false;
-		} else
-		if (!event.isDetached() && !event.getMember().hasPermission(Permission.valueOf(info.permission))) {
+		if (info.ownerOnly
+				|| member != null && !event.isDetached() && !member.hasPermission(info.requiredPermission)) {
 			event.replyError("You do not have permission to use this command").finish();
 			return true;
 		}
 		return false;
 	}
 
-	private static final HashMap<OptionType, Class<?>> typeMap = new HashMap<>(){{
-		put(OptionType.STRING, String.class);
-		put(OptionType.INTEGER, Integer.class);
-		put(OptionType.BOOLEAN, Boolean.class);
-		put(OptionType.USER, User.class);
-		put(OptionType.CHANNEL, Channel.class);
-		put(OptionType.ATTACHMENT, Message.Attachment.class);
-		put(OptionType.ROLE, Role.class);
-		put(OptionType.MENTIONABLE, Object.class);
-		put(OptionType.NUMBER, Double.class);
-		put(OptionType.SUB_COMMAND, String.class);
-		put(OptionType.SUB_COMMAND_GROUP, String.class);
-		put(OptionType.UNKNOWN, Object.class);
-	}};
-
-	public static Method getCommand(String command) {
-		// First, check if the command is a direct match or an alias
-		Method possibleCommand = commands.entrySet().stream()
-				.filter(entry -> entry.getKey().name.equalsIgnoreCase(command)
-						|| Arrays.stream(entry.getKey().aliases).anyMatch(alias -> alias.equalsIgnoreCase(command)))
-				.map(Map.Entry::getValue)
-				.findFirst()
-				.orElse(null);
-
-		// If a direct match is found, return it
-		if (possibleCommand != null) {
-			return possibleCommand;
+	// The configured owner id, parsed once per loaded config. Reloading the config replaces the instance, which
+	// invalidates the cached id; a missing or invalid id is cached as NO_OWNER.
+	private static long ownerId() {
+		Config config = Config.getInstance();
+		Owner owner = CommandManager.owner;
+		if (owner != null && owner.config == config)
+			return owner.id;
+		long id = NO_OWNER;
+		if (config != null) {
+			try {
+				id = Long.parseLong(String.valueOf(config.get("owner-id", Object.class)));
+			} catch (NumberFormatException ignored) {}
 		}
+		CommandManager.owner = new Owner(config, id);
+		return id;
+	}
 
-		// If not a direct command, check subcommands
-		for (var entry : subcommands.entrySet()) {
-			String parentCommand = entry.getKey();
-			List<Map.Entry<CommandInfo, Method>> subcommandList = entry.getValue();
-
-			// Check if the command starts with the parent command
-			if (!command.startsWith(parentCommand)) continue;
-
-			// If the parent command matches exactly, check for matching subcommands
-			if (parentCommand.equalsIgnoreCase(command)) {
-				return subcommandList.stream()
-						.filter(subcommand -> subcommand.getKey().name.equalsIgnoreCase(command)
-								|| Arrays.stream(subcommand.getKey().aliases).anyMatch(alias -> alias.equalsIgnoreCase(command)))
-						.map(Map.Entry::getValue)
-						.findFirst()
-						.orElse(null);
-			}
-
-			// Split the command to separate the parent command and the subcommand
-			String[] commandParts = command.split(" ");
-			if (commandParts.length < 2) continue;  // If no subcommand, skip
-
-			String group = commandParts[0];
-			String subcommand = commandParts[1];
-
-			// If the group (parent command) matches, check for matching subcommands
-			if (parentCommand.equalsIgnoreCase(group)) {
-				Method matchedSubcommand = subcommandList.stream()
-						.filter(sub -> sub.getKey().name.equalsIgnoreCase(subcommand)
-								|| Arrays.stream(sub.getKey().aliases).anyMatch(alias -> alias.equalsIgnoreCase(subcommand)))
-						.map(Map.Entry::getValue)
-						.findFirst()
-						.orElse(null);
-
-				if (matchedSubcommand != null) {
-					return matchedSubcommand;
-				}
-			}
-		}
+	private record Owner(Config config, long id) {}
 
-		// If no command is found, return null
-		return null;
+	public static Method getCommand(String command) {
+		CommandInfo info = getCommandInfo(command);
+		return info == null ? null : info.method;
 	}
 
-	private static Method findAutoCompleteMethod(Class<?> clazz, String commandName) {
-		return Arrays.stream(clazz.getDeclaredMethods())
-				.filter(method -> method.isAnnotationPresent(AutoCompleteHandler.class)
-						&& method.getParameters().length == 1
-						&& Arrays.stream(method.getAnnotation(AutoCompleteHandler.class).value()).toList().contains(commandName))
-				.findFirst().orElse(null);
+	public static CommandInfo getCommandInfo(String command) {
+		Map<String, CommandInfo> table = routes;
+		CommandInfo info = table.get(command);
+		if (info == null) {
+			// toLowerCase returns the same instance when nothing changes, so only mixed-case names allocate
+			String folded = command.toLowerCase(Locale.ROOT);
+			if (folded != command)
+				info = table.get(folded);
+		}
+		return info;
 	}
 }
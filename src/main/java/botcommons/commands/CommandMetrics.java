@@ -0,0 +1,175 @@
+package botcommons.commands;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatch statistics for every command, keyed by the full command name (e.g. {@code "config"} or
+ * {@code "music play"}). Obtain the live instance with {@link CommandManager#getMetrics()}.
+ */
+@SuppressWarnings("unused")
+public final class CommandMetrics {
+	public enum Stage {
+		/** Resolving the command from the interaction name */
+		LOOKUP,
+		/** The permission checks, after the middleware ran */
+		PERMISSION,
+		/** Decoding the interaction options into arguments */
+		DECODE,
+		/** Running the command method itself */
+		EXECUTE,
+		/** Running the autocomplete handler for one of the command's options */
+		AUTOCOMPLETE
+	}
+
+	private final Map<String, Stats> commands = new ConcurrentHashMap<>();
+	private final LongAdder unknownCommands = new LongAdder();
+
+	CommandMetrics() {}
+
+	/**
+	 * @return The statistics for the command, or null if it has not been dispatched yet
+	 */
+	public Stats get(String command) {
+		return commands.get(command);
+	}
+
+	public Map<String, Stats> getAll() {
+		return Collections.unmodifiableMap(commands);
+	}
+
+	public long getUnknownCommands() {
+		return unknownCommands.sum();
+	}
+
+	public void reset() {
+		commands.clear();
+		unknownCommands.reset();
+	}
+
+	Stats stats(String command) {
+		Stats stats = commands.get(command);
+		return stats != null ? stats : commands.computeIfAbsent(command, Stats::new);
+	}
+
+	void unknownCommand() {
+		unknownCommands.increment();
+	}
+
+	public static final class Stats {
+		private final String command;
+		private final LatencyHistogram[] latencies = new LatencyHistogram[Stage.values().length];
+		private final Map<String, LatencyHistogram> middleware = new ConcurrentHashMap<>();
+		final LongAdder invocations = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder runCheckRejections = new LongAdder();
+		final LongAdder checkFailures = new LongAdder();
+		final LongAdder rateLimited = new LongAdder();
+		final LongAdder autoDeferred = new LongAdder();
+		final LongAdder restCalls = new LongAdder();
+		final LongAdder autoCompletes = new LongAdder();
+		final LongAdder autoCompleteErrors = new LongAdder();
+		final LongAdder autoCompleteCacheHits = new LongAdder();
+		final LongAdder autoCompleteSuperseded = new LongAdder();
+		final LongAdder autoCompleteExpired = new LongAdder();
+
+		private Stats(String command) {
+			this.command = command;
+			for (int i = 0; i < latencies.length; i++)
+				latencies[i] = new LatencyHistogram();
+		}
+
+		public String getCommand() {
+			return command;
+		}
+
+		public LatencyHistogram getLatency(Stage stage) {
+			return latencies[stage.ordinal()];
+		}
+
+		/**
+		 * @return How long the named middleware took to decide, including time spent waiting on asynchronous work,
+		 * or null if it has not run for this command
+		 */
+		public LatencyHistogram getMiddlewareLatency(String name) {
+			return middleware.get(name);
+		}
+
+		public long getInvocations() {
+			return invocations.sum();
+		}
+
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		/**
+		 * @return How many invocations were stopped by a middleware, including the run check
+		 */
+		public long getRunCheckRejections() {
+			return runCheckRejections.sum();
+		}
+
+		public long getCheckFailures() {
+			return checkFailures.sum();
+		}
+
+		public long getRateLimited() {
+			return rateLimited.sum();
+		}
+
+		/**
+		 * @return How many invocations had not replied by the defer threshold and were deferred automatically
+		 */
+		public long getAutoDeferred() {
+			return autoDeferred.sum();
+		}
+
+		/**
+		 * @return How many REST requests were issued to reply to invocations, including deferrals and fetching the
+		 * sent message for {@link ReplyContext#finish(java.util.function.Consumer)}
+		 */
+		public long getRestCalls() {
+			return restCalls.sum();
+		}
+
+		public long getAutoCompletes() {
+			return autoCompletes.sum();
+		}
+
+		public long getAutoCompleteErrors() {
+			return autoCompleteErrors.sum();
+		}
+
+		public long getAutoCompleteCacheHits() {
+			return autoCompleteCacheHits.sum();
+		}
+
+		/**
+		 * @return How many autocomplete requests were cancelled or dropped because a newer one arrived
+		 */
+		public long getAutoCompleteSuperseded() {
+			return autoCompleteSuperseded.sum();
+		}
+
+		/**
+		 * @return How many autocomplete requests were dropped because they could no longer be answered in time
+		 */
+		public long getAutoCompleteExpired() {
+			return autoCompleteExpired.sum();
+		}
+
+		void record(Stage stage, long nanos) {
+			latencies[stage.ordinal()].record(nanos);
+		}
+
+		void recordMiddleware(String name, long nanos) {
+			LatencyHistogram latency = middleware.get(name);
+			if (latency == null)
+				latency = middleware.computeIfAbsent(name, k -> new LatencyHistogram());
+			latency.record(nanos);
+		}
+	}
+}
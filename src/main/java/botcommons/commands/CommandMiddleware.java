@@ -0,0 +1,29 @@
+package botcommons.commands;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A step that runs before every command, in the order it was added with
+ * {@link CommandManager#addMiddleware(String, CommandMiddleware)}. The decision may complete later, e.g. after a
+ * database lookup, without blocking the thread that received the interaction. Values for later middleware or the
+ * command can be stored with {@link GenericCommandEvent#setAttribute(String, Object)}.
+ */
+@FunctionalInterface
+public interface CommandMiddleware {
+	CompletableFuture<Boolean> CONTINUE = CompletableFuture.completedFuture(true);
+	CompletableFuture<Boolean> STOP = CompletableFuture.completedFuture(false);
+
+	/**
+	 * @return A future completing with true to continue with the next middleware and eventually the command, or
+	 * with false to stop. Middleware that stops should reply to the event, otherwise a generic error is sent.
+	 */
+	CompletableFuture<Boolean> handle(GenericCommandEvent event);
+
+	/**
+	 * Adapts a synchronous check, such as the run check passed to {@code CommandManager.init}.
+	 */
+	static CommandMiddleware of(Function<GenericCommandEvent, Boolean> check) {
+		return event -> check.apply(event) ? CONTINUE : STOP;
+	}
+}
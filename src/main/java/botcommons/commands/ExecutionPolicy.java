@@ -0,0 +1,109 @@
+package botcommons.commands;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Decides where {@link Command} methods run. The default, {@link #inline()}, runs them on the JDA event thread;
+ * the other policies hand them to an executor so the event thread returns immediately, optionally capping how many
+ * commands may run at once for a single guild or user.
+ */
+@SuppressWarnings("unused")
+public final class ExecutionPolicy {
+	private static final ExecutionPolicy INLINE = new ExecutionPolicy(null, 0, 0);
+
+	private final Executor executor;
+	private final int perGuild;
+	private final int perUser;
+	// Running command count per snowflake; entries are removed once they drop back to zero
+	private final ConcurrentHashMap<Long, Integer> guildSlots = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Long, Integer> userSlots = new ConcurrentHashMap<>();
+
+	private ExecutionPolicy(Executor executor, int perGuild, int perUser) {
+		this.executor = executor;
+		this.perGuild = perGuild;
+		this.perUser = perUser;
+	}
+
+	/**
+	 * Runs commands and autocomplete handlers on the event thread. Autocomplete requests are then not coalesced:
+	 * each keystroke is completed before the next is read, so slow handlers should use a cache or another policy.
+	 */
+	public static ExecutionPolicy inline() {
+		return INLINE;
+	}
+
+	public static ExecutionPolicy virtualThreads() {
+		return virtualThreads(0, 0);
+	}
+
+	/**
+	 * Runs every command on its own virtual thread.
+	 * @param perGuild The maximum number of commands running at once in one guild, or 0 for no limit
+	 * @param perUser The maximum number of commands running at once for one user, or 0 for no limit
+	 */
+	public static ExecutionPolicy virtualThreads(int perGuild, int perUser) {
+		return of(Executors.newVirtualThreadPerTaskExecutor(), perGuild, perUser);
+	}
+
+	public static ExecutionPolicy of(Executor executor, int perGuild, int perUser) {
+		if (executor == null)
+			throw new IllegalArgumentException("Executor cannot be null");
+		if (perGuild < 0 || perUser < 0)
+			throw new IllegalArgumentException("Concurrency limits cannot be negative");
+		return new ExecutionPolicy(executor, perGuild, perUser);
+	}
+
+	public boolean isInline() {
+		return executor == null;
+	}
+
+	public int getPerGuild() {
+		return perGuild;
+	}
+
+	public int getPerUser() {
+		return perUser;
+	}
+
+	Executor executor() {
+		return executor;
+	}
+
+	/**
+	 * Reserves a slot for the guild and user, a guild id of 0 meaning the command was not run in a guild.
+	 * @return false if either limit is already reached, in which case nothing is reserved
+	 */
+	boolean tryAcquire(long guildId, long userId) {
+		if (guildId != 0 && !acquire(guildSlots, guildId, perGuild))
+			return false;
+		if (!acquire(userSlots, userId, perUser)) {
+			if (guildId != 0)
+				release(guildSlots, guildId, perGuild);
+			return false;
+		}
+		return true;
+	}
+
+	void release(long guildId, long userId) {
+		if (guildId != 0)
+			release(guildSlots, guildId, perGuild);
+		release(userSlots, userId, perUser);
+	}
+
+	private static boolean acquire(ConcurrentHashMap<Long, Integer> slots, long key, int limit) {
+		if (limit == 0)
+			return true;
+		if (slots.merge(key, 1, Integer::sum) <= limit)
+			return true;
+		release(slots, key, limit);
+		return false;
+	}
+
+	private static void release(ConcurrentHashMap<Long, Integer> slots, long key, int limit) {
+		if (limit == 0)
+			return;
+		slots.computeIfPresent(key, (k, running) -> running <= 1 ? null : running - 1);
+	}
+}
@@ -0,0 +1,26 @@
+package botcommons.commands;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * A compile-time registration for one {@link CommandHolder}, generated by the BotCommons annotation processor and
+ * discovered through {@link java.util.ServiceLoader}. It lists the holder's commands with direct-call invokers, so
+ * registering the holder needs neither a method scan nor a compiled method handle.
+ */
+public interface GeneratedCommands {
+	Class<?> holder();
+
+	/**
+	 * @param holders Supplies the holder instance, shared with the holder's autocomplete handlers
+	 */
+	List<Entry> commands(Holders holders) throws ReflectiveOperationException;
+
+	@FunctionalInterface
+	interface Holders {
+		Object get(Class<?> type) throws ReflectiveOperationException;
+	}
+
+	record Entry(Method method, CommandInvoker invoker) {
+	}
+}
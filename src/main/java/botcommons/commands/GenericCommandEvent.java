@@ -1,6 +1,7 @@
 package botcommons.commands;
 
 import botcommons.config.ConfigManager;
+import botcommons.events.EventWaiter;
 import botcommons.menu.MenuManager;
 import botcommons.menu.types.BaseMenu;
 import com.google.gson.Gson;
@@ -18,6 +19,7 @@ import net.dv8tion.jda.api.utils.messages.MessageCreateData;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.reflect.Array;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -29,6 +31,11 @@ public class GenericCommandEvent {
 	private final GenericCommandInteractionEvent jdaEvent;
 
 	ReplyContext replyContext;
+	private CommandInfo info;
+	// The interaction's options in the order of the command's args, resolved once per interaction
+	private OptionMapping[] mappings;
+	// Values stored by middleware, only created once something is stored
+	private Map<String, Object> attributes;
 
 	private GenericCommandEvent(GenericCommandInteractionEvent event) {
 		jdaEvent = event;
@@ -74,6 +81,11 @@ public class GenericCommandEvent {
 		return jdaEvent.getMember();
 	}
 
+	/**
+	 * The underlying JDA event. Reply through {@link #reply(String)} and the other reply methods rather than on this
+	 * event, since acknowledging it directly can race with the automatic deferral, see
+	 * {@link CommandManager#setDeferThreshold(java.time.Duration)}.
+	 */
 	public SlashCommandInteractionEvent getSlash() {
 		return jdaEvent instanceof SlashCommandInteractionEvent sce ? sce : null;
 	}
@@ -107,52 +119,106 @@ public class GenericCommandEvent {
 		return true;
 	}
 
+	CommandInfo getCommandInfo() {
+		if (info == null)
+			info = CommandInfo.from(this);
+		return info;
+	}
+
+	void setCommandInfo(CommandInfo info) {
+		this.info = info;
+	}
+
+	OptionMapping[] mappings() {
+		if (mappings != null)
+			return mappings;
+
+		CommandInfo from = getCommandInfo();
+		OptionMapping[] resolved = new OptionMapping[from.args.length];
+		for (OptionMapping optionMapping : jdaEvent.getOptions()) {
+			int index = from.indexOf(optionMapping.getName());
+			if (index >= 0)
+				resolved[index] = optionMapping;
+		}
+		mappings = resolved;
+		return resolved;
+	}
+
+	OptionMapping mapping(int index) {
+		return mappings()[index];
+	}
+
 	public Data[] getArgs() {
-		return Arrays.stream(jdaEvent.getOptions().toArray(OptionMapping[]::new)).map(
-				optionMapping -> {
-					CommandInfo.Option option = CommandInfo.from(this).getOption(optionMapping.getName());
-					var data = switch (option.getType()) {
-						case UNKNOWN, SUB_COMMAND, SUB_COMMAND_GROUP -> null;
-						case STRING -> optionMapping.getAsString();
-						case INTEGER -> optionMapping.getAsLong();
-						case BOOLEAN -> optionMapping.getAsBoolean();
-						case USER -> optionMapping.getAsUser();
-						case CHANNEL -> optionMapping.getAsChannel();
-						case ROLE -> optionMapping.getAsRole();
-						case MENTIONABLE -> optionMapping.getAsMentionable();
-						case NUMBER -> optionMapping.getAsDouble();
-						case ATTACHMENT -> optionMapping.getAsAttachment();
-					};
-					return new Data(option, data);
-				}
-		).toArray(Data[]::new);
+		CommandInfo from = getCommandInfo();
+		OptionMapping[] resolved = mappings();
+		List<Data> args = new ArrayList<>(resolved.length);
+		for (int i = 0; i < resolved.length; i++) {
+			if (resolved[i] != null)
+				args.add(new Data(from.args[i], ArgumentConverters.natural(resolved[i])));
+		}
+		return args.toArray(Data[]::new);
 	}
 
 	public record Data(CommandInfo.Option option, Object value) {
 	}
 
 
+	/**
+	 * Decodes an option with the converter registered for the type. Primitive types may be passed to get zero
+	 * instead of null when an optional option is missing.
+	 */
+	@SuppressWarnings("unchecked")
 	public <T> T getArg(String name, Class<T> type) {
-		CommandInfo from = CommandInfo.from(this);
-		CommandInfo.Option option = from.getOption(name);
+		CommandInfo from = getCommandInfo();
+		int index = from.indexOf(name);
 
-		if (option == null) {
+		if (index < 0) {
 			return null;
 		}
 
-		for (Data arg : getArgs()) {
-			if (arg.option.getName().equals(name)) {
-				return type.cast(arg.value);
+		OptionMapping mapping = mappings()[index];
+		if (mapping != null) {
+			try {
+				return ArgumentConverters.convert(mapping, type);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e);
 			}
 		}
 
+		return (T) missingValue(from.args[index], type);
+	}
+
+	/**
+	 * The value used when the interaction does not contain the option: the default value for required options
+	 * (which only context menus can leave out), otherwise null, or zero for primitives.
+	 */
+	static Object missingValue(CommandInfo.Option option, Class<?> type) {
+		Object value = null;
 		if (option.isRequired()) {
-			if (type==String.class)
-				return type.cast(option.getDefaultValue());
-			return new Gson().fromJson(option.getDefaultValue(), type);
+			if (type == String.class)
+				value = option.getDefaultValue();
+			else if (option.getDefaultValue() != null)
+				value = new Gson().fromJson(option.getDefaultValue(), type);
 		}
+		if (value == null && type.isPrimitive())
+			value = Array.get(Array.newInstance(type, 1), 0);
+		return value;
+	}
+
+	/**
+	 * Stores a value for later middleware and the command, e.g. a lookup a middleware already made.
+	 */
+	public void setAttribute(String key, Object value) {
+		if (attributes == null)
+			attributes = new HashMap<>();
+		attributes.put(key, value);
+	}
 
-		return null;
+	@Nullable
+	public <T> T getAttribute(String key, Class<T> type) {
+		return attributes == null ? null : type.cast(attributes.get(key));
 	}
 
 	public ConfigManager.Config getConfig() {
@@ -164,7 +230,11 @@ public class GenericCommandEvent {
 	}
 
 	public void deferReply() {
-		jdaEvent.deferReply().queue();
+		replyContext.defer();
+	}
+
+	public ReplyContext progress(String status) {
+		return replyContext.progress(status);
 	}
 
 	public boolean reply(String message, Consumer<Message> success) {
@@ -190,6 +260,11 @@ public class GenericCommandEvent {
 		return replyContext.listenOnce(eventType, filter, listener);
 	}
 
+	public <T extends GenericEvent> ReplyContext replyListener(Class<T> eventType, EventWaiter.Scope scope, long key,
+													   Predicate<T> filter, Function<T, Void> listener) {
+		return replyContext.listenOnce(eventType, scope, key, filter, listener);
+	}
+
 	public ReplyContext replyEphemeral(String message) {
 		return this.replyContext.content(message).ephemeral();
 	}
@@ -0,0 +1,107 @@
+package botcommons.commands;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, log-linear histogram of nanosecond durations in the style of HdrHistogram. Every power of two is
+ * split into 16 linear sub-buckets, so recorded values keep roughly 6% precision, and recording is a couple of
+ * atomic increments with no allocation. Values of 2^41ns (~36 minutes) and above are clamped into the last bucket.
+ */
+@SuppressWarnings("unused")
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_MAGNITUDE = 40;
+	private static final int BUCKETS = SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		buckets.incrementAndGet(indexOf(nanos));
+		count.increment();
+		sum.add(nanos);
+		if (nanos > max.get())
+			max.accumulateAndGet(nanos, Math::max);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMax(TimeUnit unit) {
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+	public double getMean(TimeUnit unit) {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n / unit.toNanos(1);
+	}
+
+	/**
+	 * @param percentile A value between 0 and 100
+	 * @return The value below which the given percentage of recordings fall, at bucket precision
+	 */
+	public long getValueAtPercentile(double percentile, TimeUnit unit) {
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0)
+			return 0;
+
+		long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target)
+				return unit.convert(Math.min(highestValueOf(i), max.get()), TimeUnit.NANOSECONDS);
+		}
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return How many recordings were greater than the given duration, at bucket precision
+	 */
+	public long getCountAbove(long value, TimeUnit unit) {
+		int from = indexOf(unit.toNanos(value)) + 1;
+		long above = 0;
+		for (int i = from; i < BUCKETS; i++)
+			above += buckets.get(i);
+		return above;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int magnitude = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_MAGNITUDE);
+		int shift = magnitude - SUB_BUCKET_BITS;
+		int sub = (int) Math.min((value >>> shift) - SUB_BUCKETS, SUB_BUCKETS - 1);
+		return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+	}
+
+	private static long highestValueOf(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+}
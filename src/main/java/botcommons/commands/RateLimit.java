@@ -0,0 +1,29 @@
+package botcommons.commands;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket limiting how often a {@link Command} may run, declared through {@link Command#rateLimits()}.
+ * The bucket refills at {@code permits} per {@code period} and holds at most {@code burst} tokens.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface RateLimit {
+	Scope scope() default Scope.USER;
+	int permits() default 1;
+	long period() default 1;
+	TimeUnit unit() default TimeUnit.SECONDS;
+	int burst() default 1;
+
+	enum Scope {
+		/** One bucket per user */
+		USER,
+		/** One bucket per guild, falling back to the user outside of guilds */
+		GUILD,
+		/** A single bucket shared by everyone running the command */
+		COMMAND
+	}
+}
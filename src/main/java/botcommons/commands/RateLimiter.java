@@ -0,0 +1,68 @@
+package botcommons.commands;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token buckets for one {@link RateLimit}, implemented as a generic cell rate algorithm: each key only
+ * stores the time at which its bucket will be full again, updated with a single CAS. Buckets that are already
+ * full carry no information, so they are swept out periodically.
+ */
+final class RateLimiter {
+	private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+	final RateLimit.Scope scope;
+	private final long interval;
+	private final long tolerance;
+	private final ConcurrentHashMap<Long, AtomicLong> buckets = new ConcurrentHashMap<>();
+	private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+	RateLimiter(RateLimit limit) {
+		if (limit.permits() <= 0 || limit.period() <= 0 || limit.burst() <= 0)
+			throw new IllegalArgumentException("Rate limit permits, period and burst must be positive");
+		this.scope = limit.scope();
+		this.interval = Math.max(1, limit.unit().toNanos(limit.period()) / limit.permits());
+		this.tolerance = interval * limit.burst();
+	}
+
+	/**
+	 * Takes a token for the key.
+	 * @return 0 if a token was available, otherwise how many nanoseconds until one will be
+	 */
+	long tryAcquire(long key, long now) {
+		sweep(now);
+		AtomicLong full = buckets.get(key);
+		if (full == null)
+			full = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+		while (true) {
+			long current = full.get();
+			long next = Math.max(current, now) + interval;
+			if (next - now > tolerance)
+				return next - now - tolerance;
+			if (full.compareAndSet(current, next))
+				return 0;
+		}
+	}
+
+	/**
+	 * Returns a token taken by {@link #tryAcquire(long, long)}, for when a later limiter on the same call rejected it.
+	 */
+	void refund(long key) {
+		AtomicLong full = buckets.get(key);
+		if (full != null)
+			full.addAndGet(-interval);
+	}
+
+	int size() {
+		return buckets.size();
+	}
+
+	private void sweep(long now) {
+		long last = lastSweep.get();
+		if (now - last < SWEEP_INTERVAL || !lastSweep.compareAndSet(last, now))
+			return;
+		// A caller racing with the removal may update a bucket that is no longer mapped, which at worst grants one extra token
+		buckets.values().removeIf(full -> full.get() <= now);
+	}
+}
@@ -1,5 +1,6 @@
 package botcommons.commands;
 
+import botcommons.events.EventWaiter;
 import botcommons.menu.MenuManager;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
@@ -7,8 +8,9 @@ import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.events.GenericEvent;
 import net.dv8tion.jda.api.events.interaction.command.GenericCommandInteractionEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.requests.RestAction;
 import net.dv8tion.jda.api.requests.restaction.WebhookMessageCreateAction;
+import net.dv8tion.jda.api.requests.restaction.WebhookMessageEditAction;
 import net.dv8tion.jda.api.requests.restaction.interactions.ReplyCallbackAction;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -16,6 +18,7 @@ import org.jetbrains.annotations.Nullable;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -24,17 +27,31 @@ import java.util.function.Predicate;
 
 @SuppressWarnings({"unused", "UnusedReturnValue"})
 public class ReplyContext {
+	private static final Duration LISTEN_TIMEOUT = Duration.ofMinutes(5);
+
 	private volatile boolean finished = false;
 	private String content;
 	private boolean ephemeral = false;
-	private final boolean defer = false;
+	// Set once the interaction was deferred, after which replies go through the interaction hook
+	private volatile boolean defer = false;
 	@Nullable
 	private String menuId = null;
 	@NotNull
 	private final GenericCommandInteractionEvent jdaEvent;
 	private final List<EmbedBuilder> embeds = new ArrayList<>();
 	private final List<Object> menuArgs = new ArrayList<>();
-	private OnceListener<? extends GenericEvent> once;
+	// Starts the wait registered through listenOnce, once the reply was sent
+	private Runnable once;
+	private ScheduledFuture<?> watchdog;
+	// The command's statistics, which count the REST calls issued from here
+	private volatile CommandMetrics.Stats stats;
+	// Progressive replies: the latest status not sent yet, and whether an edit is in flight or scheduled
+	private boolean progressive = false;
+	private String progressStatus;
+	private boolean progressBusy = false;
+	private long progressIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+	private long lastEditNanos;
+	private CompletableFuture<?> progressEdit = CompletableFuture.completedFuture(null);
 
 	public String getContent() {
 		return content;
@@ -86,7 +103,17 @@ public class ReplyContext {
 	}
 
 	public <T extends GenericEvent> ReplyContext listenOnce(Class<T> eventType, Predicate<T> filter, Function<T, Void> listener) {
-		once = new OnceListener<>(eventType, jdaEvent.getJDA(), filter, listener);
+		return listenOnce(eventType, EventWaiter.Scope.ANY, 0, filter, listener);
+	}
+
+	/**
+	 * Like {@link #listenOnce(Class, Predicate, Function)}, but only events whose channel, user or message id
+	 * equals the key are offered to the filter.
+	 */
+	public <T extends GenericEvent> ReplyContext listenOnce(Class<T> eventType, EventWaiter.Scope scope, long key,
+															Predicate<T> filter, Function<T, Void> listener) {
+		JDA jda = jdaEvent.getJDA();
+		once = () -> EventWaiter.waitFor(jda, eventType, scope, key, filter::test, listener::apply, LISTEN_TIMEOUT, null);
 		if (jdaEvent.getChannel().isDetached()) {
 			throw new IllegalStateException("Cannot listen for events in a detached channel. " +
 					"Ensure the channel is not detached before using listenOnce. " +
@@ -95,8 +122,113 @@ public class ReplyContext {
 		return this;
 	}
 
+	/**
+	 * Acknowledges the interaction with a "thinking" state if it has not been acknowledged yet. {@link #finish()}
+	 * then sends the reply through the interaction hook. The deferral is ephemeral if {@link #ephemeral()} was
+	 * called before, and the reply keeps that visibility even if it is marked ephemeral later.
+	 * <p>
+	 * Only replies sent through this context are guarded against the deferral. If the command acknowledges the
+	 * interaction on the JDA event directly while it is being deferred, e.g. by the automatic deferral of
+	 * {@link CommandManager#setDeferThreshold(Duration)}, whichever request is queued second fails as already
+	 * acknowledged. A losing deferral is dropped silently.
+	 * @return true if this call deferred the interaction
+	 */
+	public synchronized boolean defer() {
+		if (finished || defer || jdaEvent.isAcknowledged())
+			return false;
+		jdaEvent.deferReply(ephemeral).queue(null, failure -> {
+			if (!(failure instanceof IllegalStateException))
+				RestAction.getDefaultFailure().accept(failure);
+		});
+		restCall();
+		defer = true;
+		return true;
+	}
+
+	/**
+	 * Sets how often {@link #progress(String)} may edit the reply, one second by default.
+	 */
+	public synchronized ReplyContext progressInterval(Duration interval) {
+		if (interval.isNegative())
+			throw new IllegalArgumentException("Interval must not be negative");
+		this.progressIntervalNanos = interval.toNanos();
+		return this;
+	}
+
+	/**
+	 * Shows a status while the command is working, deferring the interaction first if needed. Statuses can be
+	 * pushed as often as the command likes: the reply is edited at most once per progress interval with the latest
+	 * status, and {@link #finish()} replaces it with the final reply once the last edit completed.
+	 */
+	public synchronized ReplyContext progress(String status) {
+		if (finished)
+			throw new IllegalStateException("ReplyContext already finished");
+		progressive = true;
+		defer();
+		progressStatus = status;
+		if (!progressBusy) {
+			progressBusy = true;
+			scheduleProgress();
+		}
+		return this;
+	}
+
+	// Sends the pending status as soon as the interval since the last edit passed. Called with progressBusy set.
+	private void scheduleProgress() {
+		long wait = lastEditNanos + progressIntervalNanos - System.nanoTime();
+		if (lastEditNanos == 0 || wait <= 0)
+			sendProgress();
+		else
+			jdaEvent.getJDA().getGatewayPool().schedule(this::flushProgress, wait, TimeUnit.NANOSECONDS);
+	}
+
+	private synchronized void flushProgress() {
+		if (finished)
+			progressBusy = false;
+		else
+			sendProgress();
+	}
+
+	private void sendProgress() {
+		String status = progressStatus;
+		progressStatus = null;
+		lastEditNanos = System.nanoTime();
+		restCall();
+		progressEdit = jdaEvent.getHook().editOriginal(status).submit()
+				.whenComplete((message, error) -> progressSent());
+	}
+
+	private synchronized void progressSent() {
+		if (progressStatus != null && !finished)
+			scheduleProgress();
+		else
+			progressBusy = false;
+	}
+
+	// True until a reply was sent, including when the interaction was only deferred
+	boolean needsReply() {
+		return !finished && (defer || !jdaEvent.isAcknowledged());
+	}
+
+	synchronized void watch(ScheduledFuture<?> watchdog) {
+		if (finished)
+			watchdog.cancel(false);
+		else
+			this.watchdog = watchdog;
+	}
+
+	void track(CommandMetrics.Stats stats) {
+		this.stats = stats;
+	}
+
+	private void restCall() {
+		CommandMetrics.Stats stats = this.stats;
+		if (stats != null)
+			stats.restCalls.increment();
+	}
+
 	public boolean finish() {
-		return finish(ignored -> {});
+		return finish(null);
 	}
 
 	private void markAsFinished() {
@@ -106,108 +238,82 @@ public class ReplyContext {
 		this.content = null;
 		this.ephemeral = false;
 		this.once = null;
+		if (watchdog != null) {
+			watchdog.cancel(false);
+			watchdog = null;
+		}
 	}
 
-	public boolean finish(Consumer<Message> consumer) {
+	/**
+	 * Sends the reply. The consumer receives the sent message; when it is null and the interaction was not
+	 * deferred, the message is never fetched, which saves a REST call.
+	 */
+	public synchronized boolean finish(@Nullable Consumer<Message> consumer) {
 		if (finished)
 			throw new IllegalStateException("ReplyContext already finished");
 		if (once != null) {
-			jdaEvent.getJDA().addEventListener(once);
+			once.run();
 		}
 		if (menuId != null) {
-			if (!defer && !jdaEvent.isAcknowledged())
+			if (!defer && !jdaEvent.isAcknowledged()) {
 				jdaEvent.deferReply().queue();
+				restCall();
+			}
 			MenuManager.replyMenu(menuId, jdaEvent.getHook(), menuArgs.toArray());
+			restCall();
 			if (menuId.endsWith("-fake")) {
-				// in 5 minutes, delete the fake menu
+				// in 5 minutes, delete the fake menu; the field is cleared once finished
+				String fakeId = menuId;
 				jdaEvent.getJDA().getGatewayPool().schedule(() -> {
-					MenuManager.menuRegistry.remove(menuId);
+					MenuManager.unregisterMenu(fakeId);
 				}, 5, TimeUnit.MINUTES);
 
 			}
 			markAsFinished();
 			return true;
 		}
-		if (defer) {
-			jdaEvent.getHook().sendMessage(content).setEmbeds(getEmbeds()).setEphemeral(ephemeral).queue(consumer);
+		if (progressive) {
+			// The final reply replaces the last status, after any edit still in flight
+			WebhookMessageEditAction<Message> action;
+			if (content == null && embeds.isEmpty())
+				action = jdaEvent.getHook().editOriginal("No content provided");
+			else
+				action = jdaEvent.getHook().editOriginal(content == null ? "" : content).setEmbeds(getEmbeds());
+			progressStatus = null;
+			progressEdit.whenComplete((message, error) -> action.queue(consumer));
+			restCall();
 			markAsFinished();
 			return true;
 		}
-
-		ReplyCallbackAction action = null;
-		WebhookMessageCreateAction<Message> action2 = null;
-		if (content == null && embeds.isEmpty()) {
-			if (!jdaEvent.isAcknowledged())
-				action = jdaEvent.reply("No content provided");
-			else
-				action2 = jdaEvent.getHook().sendMessage("No content provided");
-		} else if (content == null) {
-			if (!jdaEvent.isAcknowledged())
-				action = jdaEvent.replyEmbeds(getEmbeds());
-			else
-				action2 = jdaEvent.getHook().sendMessageEmbeds(getEmbeds());
-		} else if (embeds.isEmpty()) {
-			if (!jdaEvent.isAcknowledged())
-				action = jdaEvent.reply(content);
+		if (defer || jdaEvent.isAcknowledged()) {
+			WebhookMessageCreateAction<Message> action;
+			if (content == null && embeds.isEmpty())
+				action = jdaEvent.getHook().sendMessage("No content provided");
+			else if (content == null)
+				action = jdaEvent.getHook().sendMessageEmbeds(getEmbeds());
 			else
-				action2 = jdaEvent.getHook().sendMessage(content);
+				action = jdaEvent.getHook().sendMessage(content).setEmbeds(getEmbeds());
+			action.setEphemeral(ephemeral).queue(consumer);
+			restCall();
+			markAsFinished();
+			return true;
 		}
 
-		if (action!=null)
-			action.setEphemeral(ephemeral).queue(hook ->
-					hook.retrieveOriginal().queue(consumer)
-			);
-		else if (action2!=null)
-			action2.setEphemeral(ephemeral).queue(consumer);
+		ReplyCallbackAction action;
+		if (content == null && embeds.isEmpty())
+			action = jdaEvent.reply("No content provided");
+		else if (content == null)
+			action = jdaEvent.replyEmbeds(getEmbeds());
+		else
+			action = jdaEvent.reply(content).setEmbeds(getEmbeds());
+
+		// The callback response carries no message, so it is only fetched when someone wants it
+		action.setEphemeral(ephemeral).queue(consumer == null ? null : hook -> {
+			hook.retrieveOriginal().queue(consumer);
+			restCall();
+		});
+		restCall();
 		markAsFinished();
 		return true;
 	}
-
-	private static class OnceListener<T extends GenericEvent> extends ListenerAdapter {
-		private final Function<T, Void> listener;
-		private final JDA jda;
-		private final Predicate<T> filter;
-		private Duration timeout = Duration.ofMinutes(5);
-
-		public OnceListener(Class<T> eventType, JDA jda, Predicate<T> filter, Function<T, Void> listener) {
-			this.listener = listener;
-			this.jda = jda;
-			this.filter = filter;
-			timeout();
-		}
-
-		public OnceListener<T> setTimeout(Duration timeout) {
-			this.timeout = timeout;
-			return this;
-		}
-
-		private ScheduledFuture<?> timeout() {
-			long delay = timeout.getSeconds();
-			if (delay <= 0) {
-				delay = 1;
-				System.out.println("Timeout duration must be positive, defaulting to 1 second");
-			}
-			return jda.getGatewayPool().schedule(() ->
-					jda.removeEventListener(this),
-					delay, TimeUnit.SECONDS);
-		}
-
-		@Override
-		public void onGenericEvent(@NotNull GenericEvent event) {
-			T typedEvent;
-			try {
-				typedEvent = (T) event;
-				if (!filter.test(typedEvent))
-					return;
-			} catch (ClassCastException e) {
-				return;
-			}
-			jda.removeEventListener(this);
-			try {
-				listener.apply(typedEvent);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		}
-	}
 }
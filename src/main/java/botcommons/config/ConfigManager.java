@@ -9,8 +9,10 @@ import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 import jdk.jfr.Experimental;
 import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.events.guild.GuildReadyEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.sharding.ShardManager;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
@@ -44,7 +46,17 @@ public class ConfigManager {
 		this.assetPath = botName + "-assets";
 		jda.addEventListener(new ConfigListener());
 		// Immediately load configs for any guilds JDA already knows about
-		loadExistingGuildConfigs(jda);
+		loadExistingGuildConfigs(jda.getGuilds());
+		instance = this;
+	}
+
+	/**
+	 * Loads and serves the configs of the guilds on every shard of the manager. All shards share one config map.
+	 */
+	public ConfigManager(String botName, ShardManager shardManager) {
+		this.assetPath = botName + "-assets";
+		shardManager.addEventListener(new ConfigListener());
+		loadExistingGuildConfigs(shardManager.getGuilds());
 		instance = this;
 	}
 
@@ -108,10 +120,10 @@ public class ConfigManager {
 		configs.put(serverId, config);
 	}
 
-	private void loadExistingGuildConfigs(JDA jda) {
+	private void loadExistingGuildConfigs(List<Guild> guilds) {
 		// If JDA is already aware of guilds (e.g. was ready before listener added),
 		// load each guild's config now so nothing is missed.
-		for (var guild : jda.getGuilds()) {
+		for (var guild : guilds) {
 			loadConfigForServer(guild.getId());
 		}
 	}
@@ -0,0 +1,327 @@
+package botcommons.events;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.channel.Channel;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.interaction.GenericInteractionCreateEvent;
+import net.dv8tion.jda.api.events.interaction.component.GenericComponentInteractionCreateEvent;
+import net.dv8tion.jda.api.events.message.GenericMessageEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.events.message.MessageUpdateEvent;
+import net.dv8tion.jda.api.events.message.react.GenericMessageReactionEvent;
+import net.dv8tion.jda.api.events.session.ShutdownEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Waits for single events without registering a listener per waiter. One listener per JDA instance looks waiters
+ * up by event type and, optionally, the channel, user or message the event belongs to, so an event only reaches
+ * the waiters that could match it. Timeouts run on a shared hashed wheel timer.
+ * <pre>{@code
+ * EventWaiter.waitFor(jda, MessageReceivedEvent.class, EventWaiter.Scope.CHANNEL, channelId,
+ *         e -> e.getAuthor().getIdLong() == userId, e -> e.getMessage().reply("Got it").queue(),
+ *         Duration.ofMinutes(1), () -> channel.sendMessage("Too slow").queue());
+ * }</pre>
+ */
+@SuppressWarnings("unused")
+public final class EventWaiter implements EventListener {
+	private static final Logger logger = LoggerFactory.getLogger(EventWaiter.class);
+
+	/**
+	 * What a waiter's key identifies. Events that have no such id, e.g. a message deletion for {@link #USER},
+	 * never match a scoped waiter.
+	 */
+	public enum Scope {
+		/** No key, every event of the type is offered to the waiter */
+		ANY,
+		/** The channel the message, reaction or interaction happened in */
+		CHANNEL,
+		/** The author of the message, the user who reacted or the user who interacted */
+		USER,
+		/** The message that was updated, reacted to or whose component was used */
+		MESSAGE;
+
+		private long key(GenericEvent event) {
+			return switch (this) {
+				case ANY -> 0;
+				case CHANNEL -> {
+					if (event instanceof GenericMessageEvent e)
+						yield e.getChannel().getIdLong();
+					if (event instanceof GenericInteractionCreateEvent e) {
+						Channel channel = e.getChannel();
+						yield channel == null ? -1 : channel.getIdLong();
+					}
+					yield -1;
+				}
+				case USER -> {
+					if (event instanceof MessageReceivedEvent e)
+						yield e.getAuthor().getIdLong();
+					if (event instanceof MessageUpdateEvent e)
+						yield e.getAuthor().getIdLong();
+					if (event instanceof GenericMessageReactionEvent e)
+						yield e.getUserIdLong();
+					if (event instanceof GenericInteractionCreateEvent e)
+						yield e.getUser().getIdLong();
+					yield -1;
+				}
+				case MESSAGE -> {
+					if (event instanceof GenericMessageEvent e)
+						yield e.getMessageIdLong();
+					if (event instanceof GenericComponentInteractionCreateEvent e)
+						yield e.getMessageIdLong();
+					yield -1;
+				}
+			};
+		}
+	}
+
+	private static final EventWaiter instance = new EventWaiter();
+	private static final HashedWheelTimer timer = new HashedWheelTimer("BotCommons-EventWaiter", Duration.ofMillis(100), 512);
+	private static final Scope[] scopes = Scope.values();
+
+	// The event types a concrete event class is offered as, i.e. its superclasses and interfaces
+	private static final ClassValue<Class<?>[]> supertypes = new ClassValue<>() {
+		@Override
+		protected Class<?>[] computeValue(Class<?> type) {
+			Set<Class<?>> types = new LinkedHashSet<>();
+			collect(type, types);
+			return types.toArray(Class<?>[]::new);
+		}
+
+		private void collect(Class<?> type, Set<Class<?>> types) {
+			if (type == null || !GenericEvent.class.isAssignableFrom(type) || !types.add(type))
+				return;
+			collect(type.getSuperclass(), types);
+			for (Class<?> parent : type.getInterfaces())
+				collect(parent, types);
+		}
+	};
+
+	private final Set<JDA> registered = ConcurrentHashMap.newKeySet();
+	private final Map<Class<?>, Index> indexes = new ConcurrentHashMap<>();
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	private EventWaiter() {}
+
+	// Waiters of one event type, per scope by key. Each bucket keeps its waiters in registration order.
+	private static final class Index {
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private final Map<Long, Set<Waiter<?>>>[] buckets = new Map[scopes.length];
+
+		Index() {
+			for (int i = 0; i < buckets.length; i++)
+				buckets[i] = new ConcurrentHashMap<>();
+		}
+	}
+
+	/**
+	 * A pending wait, which ends when a matching event arrives, it times out or it is cancelled.
+	 */
+	public static final class Waiter<T extends GenericEvent> {
+		private final JDA jda;
+		private final Class<T> type;
+		private final Scope scope;
+		private final long key;
+		private final Predicate<? super T> filter;
+		private final Consumer<? super T> action;
+		private final Runnable onTimeout;
+		private final AtomicBoolean done = new AtomicBoolean();
+		private volatile HashedWheelTimer.Timeout timeout;
+
+		private Waiter(JDA jda, Class<T> type, Scope scope, long key, Predicate<? super T> filter,
+					   Consumer<? super T> action, Runnable onTimeout) {
+			this.jda = jda;
+			this.type = type;
+			this.scope = scope;
+			this.key = key;
+			this.filter = filter;
+			this.action = action;
+			this.onTimeout = onTimeout;
+		}
+
+		public boolean isDone() {
+			return done.get();
+		}
+
+		/**
+		 * @return false if the waiter already received its event or timed out
+		 */
+		public boolean cancel() {
+			if (!done.compareAndSet(false, true))
+				return false;
+			instance.remove(this);
+			return true;
+		}
+	}
+
+	/**
+	 * Waits for the first event of the type that passes the filter.
+	 */
+	public static <T extends GenericEvent> Waiter<T> waitFor(JDA jda, Class<T> type, Predicate<? super T> filter,
+															 Consumer<? super T> action, Duration timeout) {
+		return waitFor(jda, type, Scope.ANY, 0, filter, action, timeout, null);
+	}
+
+	/**
+	 * Waits for the first event of the type whose id for the scope equals the key and that passes the filter.
+	 * Only events with that key are offered to the filter.
+	 *
+	 * @param onTimeout Runs on the timer thread if no event matched within the timeout, may be null. Waiters of a
+	 *                  JDA instance that shuts down are dropped without running it.
+	 */
+	public static <T extends GenericEvent> Waiter<T> waitFor(JDA jda, Class<T> type, Scope scope, long key,
+															 Predicate<? super T> filter, Consumer<? super T> action,
+															 Duration timeout, @Nullable Runnable onTimeout) {
+		if (timeout.isNegative() || timeout.isZero())
+			throw new IllegalArgumentException("Timeout must be positive");
+		Waiter<T> waiter = new Waiter<>(jda, type, scope, scope == Scope.ANY ? 0 : key, filter, action, onTimeout);
+		instance.register(jda);
+		instance.add(waiter);
+		waiter.timeout = timer.schedule(() -> instance.expire(waiter), timeout.toNanos(), TimeUnit.NANOSECONDS);
+		// The event may have arrived before the timeout was assigned
+		if (waiter.isDone())
+			waiter.timeout.cancel();
+		return waiter;
+	}
+
+	/**
+	 * @return How many waiters are pending across all JDA instances
+	 */
+	public static int getWaiting() {
+		return instance.waiting.get();
+	}
+
+	private void register(JDA jda) {
+		if (!registered.contains(jda) && registered.add(jda))
+			jda.addEventListener(this);
+	}
+
+	private void add(Waiter<?> waiter) {
+		Index index = indexes.computeIfAbsent(waiter.type, k -> new Index());
+		index.buckets[waiter.scope.ordinal()].compute(waiter.key, (k, bucket) -> {
+			if (bucket == null)
+				bucket = new LinkedHashSet<>();
+			synchronized (bucket) {
+				bucket.add(waiter);
+			}
+			return bucket;
+		});
+		waiting.incrementAndGet();
+	}
+
+	private void remove(Waiter<?> waiter) {
+		Index index = indexes.get(waiter.type);
+		index.buckets[waiter.scope.ordinal()].computeIfPresent(waiter.key, (k, bucket) -> {
+			synchronized (bucket) {
+				bucket.remove(waiter);
+				return bucket.isEmpty() ? null : bucket;
+			}
+		});
+		waiting.decrementAndGet();
+		HashedWheelTimer.Timeout timeout = waiter.timeout;
+		if (timeout != null)
+			timeout.cancel();
+	}
+
+	private void expire(Waiter<?> waiter) {
+		if (!waiter.done.compareAndSet(false, true))
+			return;
+		remove(waiter);
+		if (waiter.onTimeout != null)
+			waiter.onTimeout.run();
+	}
+
+	// Forgets a JDA that shut down, dropping its waiters without running their timeouts
+	private void unregister(JDA jda) {
+		if (!registered.remove(jda))
+			return;
+		jda.removeEventListener(this);
+		for (Index index : indexes.values()) {
+			for (Map<Long, Set<Waiter<?>>> buckets : index.buckets) {
+				for (Set<Waiter<?>> bucket : buckets.values()) {
+					List<Waiter<?>> candidates;
+					synchronized (bucket) {
+						candidates = new ArrayList<>(bucket);
+					}
+					for (Waiter<?> waiter : candidates) {
+						if (waiter.jda == jda)
+							waiter.cancel();
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void onEvent(@NotNull GenericEvent event) {
+		if (event instanceof ShutdownEvent) {
+			unregister(event.getJDA());
+			return;
+		}
+		if (waiting.get() == 0)
+			return;
+		for (Class<?> type : supertypes.get(event.getClass())) {
+			Index index = indexes.get(type);
+			if (index == null)
+				continue;
+			for (Scope scope : scopes) {
+				Map<Long, Set<Waiter<?>>> buckets = index.buckets[scope.ordinal()];
+				if (buckets.isEmpty())
+					continue;
+				long key = scope.key(event);
+				if (key == -1)
+					continue;
+				Set<Waiter<?>> bucket = buckets.get(key);
+				if (bucket != null)
+					offer(bucket, event);
+			}
+		}
+	}
+
+	private void offer(Set<Waiter<?>> bucket, GenericEvent event) {
+		List<Waiter<?>> candidates;
+		synchronized (bucket) {
+			candidates = new ArrayList<>(bucket);
+		}
+		for (Waiter<?> waiter : candidates)
+			offer(waiter, event);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends GenericEvent> void offer(Waiter<T> waiter, GenericEvent event) {
+		if (waiter.jda != event.getJDA() || waiter.isDone())
+			return;
+		T typed = (T) event;
+		try {
+			if (!waiter.filter.test(typed))
+				return;
+		} catch (Exception e) {
+			logger.error("Event waiter filter failed for {}", event.getClass().getSimpleName(), e);
+			return;
+		}
+		if (!waiter.done.compareAndSet(false, true))
+			return;
+		remove(waiter);
+		try {
+			waiter.action.accept(typed);
+		} catch (Exception e) {
+			logger.error("Event waiter failed for {}", event.getClass().getSimpleName(), e);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package botcommons.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A timer for many short-lived timeouts that rarely fire. Timeouts are hashed into the slots of a wheel that one
+ * daemon thread advances every tick, so scheduling and cancelling are O(1) and expiry is only as precise as the
+ * tick. Tasks run on the timer thread and must not block.
+ */
+final class HashedWheelTimer {
+	private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+	private final String name;
+	private final long tickNanos;
+	private final Slot[] wheel;
+	private final int mask;
+	// Newly scheduled timeouts, moved into the wheel by the timer thread so it alone tracks the current tick
+	private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean started = new AtomicBoolean();
+	private volatile long startTime;
+	private long tick;
+
+	/**
+	 * @param slots Rounded up to a power of two
+	 */
+	HashedWheelTimer(String name, Duration tick, int slots) {
+		if (tick.isNegative() || tick.isZero())
+			throw new IllegalArgumentException("Tick must be positive");
+		if (slots <= 0)
+			throw new IllegalArgumentException("Slots must be positive");
+		this.name = name;
+		this.tickNanos = tick.toNanos();
+		int size = 1;
+		while (size < slots)
+			size <<= 1;
+		this.wheel = new Slot[size];
+		for (int i = 0; i < wheel.length; i++)
+			wheel[i] = new Slot();
+		this.mask = wheel.length - 1;
+	}
+
+	Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		start();
+		Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+		pending.add(timeout);
+		return timeout;
+	}
+
+	private void start() {
+		if (started.get() || !started.compareAndSet(false, true))
+			return;
+		startTime = System.nanoTime();
+		Thread thread = new Thread(this::run, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run() {
+		while (true) {
+			long deadline = startTime + (tick + 1) * tickNanos;
+			long sleep;
+			while ((sleep = deadline - System.nanoTime()) > 0)
+				LockSupport.parkNanos(this, sleep);
+			transferPending();
+			for (Runnable task : wheel[(int) (tick & mask)].expire()) {
+				try {
+					task.run();
+				} catch (Throwable t) {
+					logger.error("Timer task failed", t);
+				}
+			}
+			tick++;
+		}
+	}
+
+	private void transferPending() {
+		Timeout timeout;
+		while ((timeout = pending.poll()) != null) {
+			if (timeout.state.get() != Timeout.PENDING)
+				continue;
+			// The tick whose end is the first to pass the deadline, or the current one if it already passed
+			long ticks = Math.max(tick, (timeout.deadline - startTime + tickNanos - 1) / tickNanos - 1);
+			timeout.rounds = (ticks - tick) / wheel.length;
+			wheel[(int) (ticks & mask)].add(timeout);
+		}
+	}
+
+	static final class Timeout {
+		private static final int PENDING = 0, CANCELLED = 1, EXPIRED = 2;
+
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+		private long rounds;
+		private volatile Slot slot;
+		private Timeout prev, next;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * @return false if the timeout already expired or was cancelled
+		 */
+		boolean cancel() {
+			if (!state.compareAndSet(PENDING, CANCELLED))
+				return false;
+			Slot slot = this.slot;
+			if (slot != null)
+				slot.remove(this);
+			return true;
+		}
+	}
+
+	private static final class Slot {
+		private Timeout head, tail;
+
+		synchronized void add(Timeout timeout) {
+			timeout.slot = this;
+			timeout.prev = tail;
+			if (tail == null)
+				head = timeout;
+			else
+				tail.next = timeout;
+			tail = timeout;
+		}
+
+		synchronized void remove(Timeout timeout) {
+			if (timeout.slot != this)
+				return;
+			if (timeout.prev == null)
+				head = timeout.next;
+			else
+				timeout.prev.next = timeout.next;
+			if (timeout.next == null)
+				tail = timeout.prev;
+			else
+				timeout.next.prev = timeout.prev;
+			timeout.prev = timeout.next = null;
+			timeout.slot = null;
+		}
+
+		// Unlinks the timeouts due this round and returns their tasks; the rest wait another turn of the wheel
+		synchronized List<Runnable> expire() {
+			List<Runnable> due = List.of();
+			Timeout timeout = head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.state.get() != Timeout.PENDING) {
+					remove(timeout);
+				} else if (timeout.rounds <= 0) {
+					remove(timeout);
+					if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+						if (due.isEmpty())
+							due = new ArrayList<>();
+						due.add(timeout.task);
+					}
+				} else {
+					timeout.rounds--;
+				}
+				timeout = next;
+			}
+			return due;
+		}
+	}
+}
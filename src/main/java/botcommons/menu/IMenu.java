@@ -6,9 +6,25 @@ import net.dv8tion.jda.api.interactions.components.buttons.Button;
 
 public interface IMenu {
 	void handle(ButtonInteractionEvent event);
+
+	/**
+	 * Handles a button press with the state of the message it was pressed on. Menus keeping per-message state,
+	 * like the current page, override this instead of {@link #handle(ButtonInteractionEvent)}.
+	 */
+	default void handle(ButtonInteractionEvent event, MenuSession session) {
+		handle(event);
+	}
 	MessageEmbed build();
 	String getMessageId();
 	void setMessageId(String messageId);
+	/**
+	 * @return true if the menu keeps all of its per-message state in the custom ids of its buttons, see
+	 * {@link MenuStateCodec}, so no session is kept for the messages it is sent as
+	 */
+	default boolean isStateless() {
+		return false;
+	}
+
 	default Button[] getButtons() {
 		return new Button[0];
 	}
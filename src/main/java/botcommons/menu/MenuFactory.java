@@ -0,0 +1,10 @@
+package botcommons.menu;
+
+/**
+ * Creates a menu for one reply from the arguments passed to {@link MenuManager#replyMenu}, e.g.
+ * {@code args -> new SearchMenu((String) args[0])}.
+ */
+@FunctionalInterface
+public interface MenuFactory {
+	IMenu create(Object... args);
+}
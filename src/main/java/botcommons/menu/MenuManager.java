@@ -2,39 +2,104 @@ package botcommons.menu;
 
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import net.dv8tion.jda.api.events.message.MessageBulkDeleteEvent;
+import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.interactions.InteractionHook;
 import net.dv8tion.jda.api.interactions.components.ActionRow;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
+import net.dv8tion.jda.api.requests.RestAction;
 import net.dv8tion.jda.api.requests.restaction.MessageCreateAction;
 import net.dv8tion.jda.api.requests.restaction.WebhookMessageCreateAction;
+import net.dv8tion.jda.api.sharding.ShardManager;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.time.Duration;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @SuppressWarnings("unused")
 public class MenuManager extends ListenerAdapter {
+	// Exactly one of these is set, depending on how the manager was initialized
 	private final JDA jda;
-	public static final Map<String, IMenu> menuRegistry = new HashMap<>();
+	private final ShardManager shardManager;
+	public static final Map<String, IMenu> menuRegistry = new ConcurrentHashMap<>();
+	// Creates the menu for replies with arguments, by menu id
+	private static final Map<String, MenuFactory> factories = new ConcurrentHashMap<>();
+	// The public constructors of each menu class taking arguments, by argument count, spread over an Object[]
+	private static final ClassValue<MenuConstructor[][]> constructors = new ClassValue<>() {
+		@Override
+		protected MenuConstructor[][] computeValue(Class<?> type) {
+			MenuConstructor[][] byCount = new MenuConstructor[0][];
+			for (Constructor<?> constructor : type.getConstructors()) {
+				int count = constructor.getParameterCount();
+				if (count == 0)
+					continue;
+				MethodHandle handle;
+				try {
+					handle = MethodHandles.publicLookup().unreflectConstructor(constructor)
+							.asSpreader(Object[].class, count)
+							.asType(MethodType.methodType(IMenu.class, Object[].class));
+				} catch (IllegalAccessException e) {
+					// The class itself is not public; replies with arguments then fail when they are made
+					continue;
+				}
+				if (byCount.length <= count)
+					byCount = Arrays.copyOf(byCount, count + 1);
+				MenuConstructor[] candidates = byCount[count] == null ? new MenuConstructor[1] : Arrays.copyOf(byCount[count], byCount[count].length + 1);
+				Class<?>[] parameters = constructor.getParameterTypes();
+				candidates[candidates.length - 1] = new MenuConstructor(parameters,
+						MethodType.methodType(void.class, parameters).wrap().parameterArray(), handle);
+				byCount[count] = candidates;
+			}
+			return byCount;
+		}
+	};
+	// The session of every message a menu was sent as, so a button press is routed with a single lookup
+	private static final MenuSessionStore sessions = new MenuSessionStore(10_000, Duration.ofMinutes(15));
+	// Custom ids of menu buttons are "m:<menu id>:<component>", optionally followed by ":<state>". Menus built for a
+	// single message use "n:" instead, so a press after their session ended is not handed to the registered menu.
+	private static final String NAMESPACE = "m:";
+	private static final String MESSAGE_NAMESPACE = "n:";
 
 	public static MenuManager instance;
 
-	private MenuManager(JDA jda) {
+	private MenuManager(JDA jda, ShardManager shardManager) {
 		System.out.println("Initializing MenuManager");
 		instance = this;
 		this.jda = jda;
-		jda.addEventListener(this);
+		this.shardManager = shardManager;
 	}
 
-	public static void init(JDA jda) {
-		if (instance == null) {
-			new MenuManager(jda);
-		} else {
+	public static synchronized void init(JDA jda) {
+		if (instance != null)
 			throw new IllegalStateException("MenuManager already initialized.");
-		}
+		jda.addEventListener(new MenuManager(jda, null));
+	}
+
+	/**
+	 * Listens for menu interactions on every shard of the manager.
+	 */
+	public static synchronized void init(ShardManager shardManager) {
+		if (instance != null)
+			throw new IllegalStateException("MenuManager already initialized.");
+		shardManager.addEventListener(new MenuManager(null, shardManager));
+	}
+
+	private TextChannel getTextChannelById(String channelId) {
+		return jda != null ? jda.getTextChannelById(channelId) : shardManager.getTextChannelById(channelId);
+	}
+
+	private RestAction<User> retrieveUserById(String userId) {
+		return jda != null ? jda.retrieveUserById(userId) : shardManager.retrieveUserById(userId);
 	}
 
 	public static void registerMenu(IMenu... menus) {
@@ -43,20 +108,221 @@ public class MenuManager extends ListenerAdapter {
 		}
 		for (IMenu menu : menus) {
 			System.out.println("Registering menu: " + menu.getClass().getName());
-			String menuId = menu.getClass().getAnnotation(Menu.class).id();
+			Menu annotation = menu.getClass().getAnnotation(Menu.class);
+			if (annotation == null)
+				throw new IllegalArgumentException("Menu " + menu.getClass().getName() + " is not annotated with @Menu");
 
-			menuRegistry.put(menuId, menu);
+			registerMenuWithId(annotation.id(), menu);
 		}
 	}
 
+	/**
+	 * Registers a menu whose replies with arguments are created through its public constructors, compiled once per menu
+	 * class and chosen by the number and types of the arguments.
+	 */
 	public static void registerMenuWithId(String id, IMenu menu) {
+		registerMenu(id, menu, null);
+	}
+
+	/**
+	 * Registers a menu whose instances for replies with arguments come from the factory.
+	 *
+	 * @param menu    Handles replies without arguments and button presses on messages without a session
+	 * @param factory Creates the menu for replies with arguments, or null to use the menu's constructors
+	 */
+	public static void registerMenu(String id, IMenu menu, MenuFactory factory) {
 		if (id == null || id.isEmpty()) {
 			throw new IllegalArgumentException("Menu ID cannot be null or empty");
 		}
 		if (menu == null) {
 			throw new IllegalArgumentException("Menu cannot be null");
 		}
+		if (id.indexOf(':') >= 0) {
+			throw new IllegalArgumentException("Menu ID cannot contain ':' " + id);
+		}
+		factories.put(id, factory != null ? factory : constructorFactory(id, menu.getClass()));
 		menuRegistry.put(id, menu);
+		if (menu.getMessageId() != null && !menu.isStateless())
+			sessions.open(Long.parseUnsignedLong(menu.getMessageId()), menu);
+	}
+
+	public static void unregisterMenu(String id) {
+		menuRegistry.remove(id);
+		factories.remove(id);
+	}
+
+	// Boxed arguments are accepted by the primitive parameters they unbox to, and null only by reference parameters
+	private record MenuConstructor(Class<?>[] parameters, Class<?>[] boxed, MethodHandle handle) {
+		boolean accepts(Object[] args) {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i] == null ? parameters[i].isPrimitive() : !boxed[i].isInstance(args[i]))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	private static MenuFactory constructorFactory(String id, Class<? extends IMenu> type) {
+		MenuConstructor[][] byCount = constructors.get(type);
+		return args -> {
+			MenuConstructor[] candidates = args.length < byCount.length ? byCount[args.length] : null;
+			if (candidates == null)
+				throw new IllegalArgumentException("Menu " + id + " has no accessible public constructor taking " + args.length + " arguments");
+			// Constructors taking as many arguments are told apart by the types of the arguments
+			MenuConstructor match = null;
+			for (MenuConstructor candidate : candidates) {
+				if (!candidate.accepts(args))
+					continue;
+				if (match != null)
+					throw new IllegalArgumentException("Menu " + id + " has several public constructors accepting " + describe(args) + ", register a factory");
+				match = candidate;
+			}
+			if (match == null)
+				throw new IllegalArgumentException("Menu " + id + " has no public constructor accepting " + describe(args));
+			try {
+				return (IMenu) match.handle.invokeExact(args);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException("Could not create menu " + id, t);
+			}
+		};
+	}
+
+	private static String describe(Object[] args) {
+		return Arrays.stream(args).map(arg -> arg == null ? "null" : arg.getClass().getName()).collect(Collectors.joining(", ", "(", ")"));
+	}
+
+	/**
+	 * Bounds the sessions kept for messages showing a menu, 10000 sessions idle for at most 15 minutes by default.
+	 * The least recently used session is evicted first; pressing a button on a message whose session was evicted
+	 * starts a new one.
+	 */
+	public static void setSessionLimits(int maxSessions, Duration idleTimeout) {
+		sessions.setLimits(maxSessions, idleTimeout);
+	}
+
+	/**
+	 * @return The session of a message showing a menu, or null if it has none or it expired
+	 */
+	public static MenuSession getSession(long messageId) {
+		return sessions.get(messageId);
+	}
+
+	/**
+	 * @return The session of a message showing the menu, created if it has none
+	 */
+	public static MenuSession openSession(long messageId, IMenu menu) {
+		return sessions.open(messageId, menu);
+	}
+
+	public static int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * @param component The button id the menu uses, optionally followed by {@code ":"} and state from
+	 *                  {@link MenuStateCodec}
+	 * @return The custom id a menu's component is sent with
+	 * @throws IllegalArgumentException If it is longer than the 100 characters Discord allows
+	 */
+	public static String componentId(String menuId, String component) {
+		return customId(NAMESPACE, menuId, component);
+	}
+
+	private static String customId(String namespace, String menuId, String component) {
+		String id = namespace + menuId + ':' + component;
+		if (id.length() > 100)
+			throw new IllegalArgumentException("Custom id longer than 100 characters " + id);
+		return id;
+	}
+
+	// The length of the namespace a menu button's custom id starts with, or -1 if it does not belong to a menu
+	private static int namespaceLength(String customId) {
+		if (customId.startsWith(NAMESPACE))
+			return NAMESPACE.length();
+		if (customId.startsWith(MESSAGE_NAMESPACE))
+			return MESSAGE_NAMESPACE.length();
+		return -1;
+	}
+
+	/**
+	 * @return The component part of a menu button's custom id, e.g. {@code "left"} for {@code "m:help:left:AgY"},
+	 * or the custom id itself if it does not belong to a menu
+	 */
+	public static String getComponent(String customId) {
+		int namespace = namespaceLength(customId);
+		if (namespace < 0)
+			return customId;
+		int start = customId.indexOf(':', namespace);
+		if (start < 0)
+			return customId;
+		int end = customId.indexOf(':', start + 1);
+		return end < 0 ? customId.substring(start + 1) : customId.substring(start + 1, end);
+	}
+
+	/**
+	 * @return The state part of a menu button's custom id, e.g. {@code "AgY"} for {@code "m:help:left:AgY"}, or
+	 * null if it has none
+	 */
+	public static String getState(String customId) {
+		int namespace = namespaceLength(customId);
+		if (namespace < 0)
+			return null;
+		int start = customId.indexOf(':', namespace);
+		int end = start < 0 ? -1 : customId.indexOf(':', start + 1);
+		return end < 0 ? null : customId.substring(end + 1);
+	}
+
+	/**
+	 * @return The menu id of a menu button's custom id, or null if it does not belong to a menu
+	 */
+	public static String getMenuId(String customId) {
+		int namespace = namespaceLength(customId);
+		if (namespace < 0)
+			return null;
+		int end = customId.indexOf(':', namespace);
+		return end < 0 ? null : customId.substring(namespace, end);
+	}
+
+	/**
+	 * @return The buttons with custom ids namespaced to the menu, as they are sent
+	 */
+	public static Button[] namespaced(String menuId, Button... buttons) {
+		return namespaced(NAMESPACE, menuId, buttons);
+	}
+
+	/**
+	 * @return The buttons namespaced like the pressed button, for editing the message it belongs to
+	 */
+	public static Button[] namespaced(ButtonInteractionEvent event, Button... buttons) {
+		String customId = event.getComponentId();
+		String menuId = getMenuId(customId);
+		if (menuId == null)
+			return buttons;
+		return namespaced(customId.startsWith(MESSAGE_NAMESPACE) ? MESSAGE_NAMESPACE : NAMESPACE, menuId, buttons);
+	}
+
+	// Buttons of the registered menu, or of a menu built for the one message it is sent as
+	private static Button[] namespaced(String menuId, IMenu menu) {
+		return namespaced(menuRegistry.get(menuId) == menu ? NAMESPACE : MESSAGE_NAMESPACE, menuId, menu.getButtons());
+	}
+
+	private static Button[] namespaced(String namespace, String menuId, Button... buttons) {
+		Button[] result = new Button[buttons.length];
+		for (int i = 0; i < buttons.length; i++) {
+			String id = buttons[i].getId();
+			// Link buttons have no custom id
+			result[i] = id == null ? buttons[i] : buttons[i].withId(customId(namespace, menuId, id));
+		}
+		return result;
+	}
+
+	private static void sent(String menuId, IMenu menu, Message message) {
+		menu.setMessageId(message.getId());
+		// Stateless menus need no session, unless they were built from arguments and exist only for this message
+		if (!menu.isStateless() || menuRegistry.get(menuId) != menu)
+			sessions.open(message.getIdLong(), menu);
 	}
 
 	public static void sendMenu(String menuId, String channelId) {
@@ -65,14 +331,14 @@ public class MenuManager extends ListenerAdapter {
 		if (menu==null)
 			throw new IllegalArgumentException("Menu not found " + menuId);
 
-		TextChannel channel = instance.jda.getTextChannelById(channelId);
+		TextChannel channel = instance.getTextChannelById(channelId);
 
 		if (channel==null) {
 			throw new IllegalArgumentException("Channel not found " + channelId);
 		}
 
-		channel.sendMessageEmbeds(menu.build()).addActionRow(menu.getButtons())
-				.queue(message -> menu.setMessageId(message.getId()));
+		channel.sendMessageEmbeds(menu.build()).addActionRow(namespaced(menuId, menu.getButtons()))
+				.queue(message -> sent(menuId, menu, message));
 	}
 
 	public static void sendMenuPrivate(String menuId, String userId) {
@@ -81,43 +347,40 @@ public class MenuManager extends ListenerAdapter {
 		if (menu == null)
 			throw new IllegalArgumentException("Menu not found " + menuId);
 
-		instance.jda.retrieveUserById(userId).queue(user ->
+		instance.retrieveUserById(userId).queue(user ->
 				user.openPrivateChannel().queue(channel ->
-						channel.sendMessageEmbeds(menu.build()).addActionRow(menu.getButtons()).queue(message ->
-								menu.setMessageId(message.getId()))));
+						channel.sendMessageEmbeds(menu.build()).addActionRow(namespaced(menuId, menu.getButtons()))
+								.queue(message -> sent(menuId, menu, message))));
 	}
 
 	private static IMenu getMenu(String menuId, Object... args) {
 		IMenu menu = menuRegistry.get(menuId);
-		try {
-			if (menu.getClass().getConstructors().length>1&&args.length>0)
-				menu = (IMenu) Arrays.stream(menu.getClass().getConstructors()).filter(constructor ->
-						constructor.getParameterCount()!=0).toList().getFirst().newInstance(args);
-			if (menuRegistry.containsKey(menuId))
-				menuRegistry.replace(menuId, menu);
-			else
-				registerMenu(menu);
-		} catch (Exception ignored) {}
-		if (menu == null)
-			menu = menuRegistry.get(menuId);
 		if (menu == null)
 			throw new IllegalArgumentException("Menu not found " + menuId);
-		return menu;
+		if (args.length == 0)
+			return menu;
+		// A menu built from arguments only belongs to the session of the message it is sent as. Menus put into the
+		// registry directly have no factory and are created through their constructors.
+		MenuFactory factory = factories.get(menuId);
+		IMenu created = (factory != null ? factory : constructorFactory(menuId, menu.getClass())).create(args);
+		if (created == null)
+			throw new IllegalStateException("Menu factory for " + menuId + " returned null");
+		return created;
 	}
 
 	@Deprecated
 	public static void replyMenu(String menuId, Message message, Object... args) {
 		IMenu menu = getMenu(menuId, args);
 
-		splitButtons(message.replyEmbeds(menu.build()), menu.getButtons()).queue(message1 ->
-				menu.setMessageId(message1.getId()));
+		splitButtons(message.replyEmbeds(menu.build()), namespaced(menuId, menu)).queue(message1 ->
+				sent(menuId, menu, message1));
 	}
 
 	public static void replyMenu(String menuId, InteractionHook hook, Object... args) {
 		IMenu menu = getMenu(menuId, args);
 
-		splitButtons(hook.sendMessageEmbeds(menu.build()), menu.getButtons()).queue(message1 ->
-				menu.setMessageId(message1.getId()));
+		splitButtons(hook.sendMessageEmbeds(menu.build()), namespaced(menuId, menu)).queue(message1 ->
+				sent(menuId, menu, message1));
 	}
 
 	private static MessageCreateAction splitButtons(MessageCreateAction action, Button... buttons) {
@@ -133,10 +396,37 @@ public class MenuManager extends ListenerAdapter {
 
 	@Override
 	public void onButtonInteraction(ButtonInteractionEvent event) {
-		System.out.println("Button interaction received");
-		String messageId = event.getMessageId();
-		menuRegistry.values().stream()
-				.filter(m -> m.getMessageId() != null && m.getMessageId().equals(messageId))
-				.findFirst().ifPresent(menu -> menu.handle(event));
+		MenuSession session = sessions.get(event.getMessageIdLong());
+		if (session == null) {
+			// Menus sent before a restart or whose session expired are only known by the id in their buttons
+			String menuId = getMenuId(event.getComponentId());
+			if (menuId == null)
+				return;
+			// A menu built for this message is gone with its session, and the registered menu is another one
+			if (event.getComponentId().startsWith(MESSAGE_NAMESPACE)) {
+				event.reply("This menu has expired.").setEphemeral(true).queue();
+				return;
+			}
+			IMenu menu = menuRegistry.get(menuId);
+			if (menu == null)
+				return;
+			if (menu.isStateless()) {
+				menu.handle(event);
+				return;
+			}
+			session = sessions.open(event.getMessageIdLong(), menu);
+		}
+		session.getMenu().handle(event, session);
+	}
+
+	@Override
+	public void onMessageDelete(MessageDeleteEvent event) {
+		sessions.remove(event.getMessageIdLong());
+	}
+
+	@Override
+	public void onMessageBulkDelete(MessageBulkDeleteEvent event) {
+		for (String messageId : event.getMessageIds())
+			sessions.remove(Long.parseUnsignedLong(messageId));
 	}
 }
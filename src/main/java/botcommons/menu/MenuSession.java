@@ -0,0 +1,47 @@
+package botcommons.menu;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The state of one message showing a menu, e.g. the page it is on. Menus are shared between every message they
+ * were sent as, so anything that differs per message belongs here. Sessions expire after being idle for a while,
+ * see {@link MenuManager#setSessionLimits(int, java.time.Duration)}.
+ */
+@SuppressWarnings("unused")
+public final class MenuSession {
+	private final long messageId;
+	private final IMenu menu;
+	private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+	volatile long lastAccess;
+
+	MenuSession(long messageId, IMenu menu) {
+		this.messageId = messageId;
+		this.menu = menu;
+	}
+
+	public long getMessageId() {
+		return messageId;
+	}
+
+	public IMenu getMenu() {
+		return menu;
+	}
+
+	/**
+	 * Stores a value for the next interaction with this message. A null value removes the key.
+	 */
+	public void setAttribute(String key, @Nullable Object value) {
+		if (value == null)
+			attributes.remove(key);
+		else
+			attributes.put(key, value);
+	}
+
+	@Nullable
+	public <T> T getAttribute(String key, Class<T> type) {
+		return type.cast(attributes.get(key));
+	}
+}
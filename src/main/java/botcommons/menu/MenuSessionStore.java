@@ -0,0 +1,79 @@
+package botcommons.menu;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Menu sessions by message id, bounded in size and evicting the least recently used session first. Sessions idle
+ * for longer than the timeout are dropped when they are looked up or reach the least recently used end, so an idle
+ * store costs nothing and a busy one never holds more than the maximum.
+ */
+final class MenuSessionStore {
+	// Access ordered, so the first entries are the ones idle the longest
+	private final LinkedHashMap<Long, MenuSession> sessions = new LinkedHashMap<>(256, 0.75f, true);
+	private int maxSessions;
+	private long idleNanos;
+
+	MenuSessionStore(int maxSessions, Duration idleTimeout) {
+		setLimits(maxSessions, idleTimeout);
+	}
+
+	synchronized void setLimits(int maxSessions, Duration idleTimeout) {
+		if (maxSessions <= 0)
+			throw new IllegalArgumentException("Max sessions must be positive");
+		if (idleTimeout.isNegative() || idleTimeout.isZero())
+			throw new IllegalArgumentException("Idle timeout must be positive");
+		this.maxSessions = maxSessions;
+		this.idleNanos = idleTimeout.toNanos();
+		evict(System.nanoTime());
+	}
+
+	synchronized MenuSession get(long messageId) {
+		MenuSession session = sessions.get(messageId);
+		if (session == null)
+			return null;
+		long now = System.nanoTime();
+		if (now - session.lastAccess > idleNanos) {
+			sessions.remove(messageId);
+			return null;
+		}
+		session.lastAccess = now;
+		return session;
+	}
+
+	/**
+	 * @return The session of the message, which is created for the menu if there is none
+	 */
+	synchronized MenuSession open(long messageId, IMenu menu) {
+		MenuSession session = get(messageId);
+		if (session != null && session.getMenu() == menu)
+			return session;
+		session = new MenuSession(messageId, menu);
+		session.lastAccess = System.nanoTime();
+		sessions.put(messageId, session);
+		evict(session.lastAccess);
+		return session;
+	}
+
+	synchronized void remove(long messageId) {
+		sessions.remove(messageId);
+	}
+
+	synchronized int size() {
+		return sessions.size();
+	}
+
+	private void evict(long now) {
+		Iterator<Map.Entry<Long, MenuSession>> it = sessions.entrySet().iterator();
+		int size = sessions.size();
+		while (it.hasNext()) {
+			MenuSession eldest = it.next().getValue();
+			if (size <= maxSessions && now - eldest.lastAccess <= idleNanos)
+				break;
+			it.remove();
+			size--;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package botcommons.menu;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Packs small menu state, like a page index or a target id, into the custom id of a button, so a menu needs no
+ * state on the server and keeps working after a restart or on another process. Values are written as varints
+ * (zigzag encoded when signed) behind a version number and encoded as unpadded base64url, which never contains
+ * the {@code ':'} separating the parts of a custom id.
+ * <pre>{@code
+ * String state = MenuStateCodec.writer(1).writeInt(page).writeLong(userId).toString();
+ * MenuStateCodec.Reader reader = MenuStateCodec.reader(state, 1);
+ * int page = reader.readInt();
+ * long userId = reader.readLong();
+ * }</pre>
+ * A whole custom id is at most 100 characters, so with the menu id and component name there is room for roughly
+ * 60 bytes of state.
+ */
+@SuppressWarnings("unused")
+public final class MenuStateCodec {
+	private static final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+	private static final Base64.Decoder decoder = Base64.getUrlDecoder();
+
+	private MenuStateCodec() {}
+
+	/**
+	 * @param version Written first and checked by {@link #reader(String, int)}, so buttons sent before the state
+	 *                layout changed can be told apart
+	 */
+	public static Writer writer(int version) {
+		return new Writer().writeInt(version);
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the state is not valid base64url or was written with another version
+	 */
+	public static Reader reader(String state, int version) {
+		byte[] bytes;
+		try {
+			bytes = decoder.decode(state);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Malformed menu state " + state, e);
+		}
+		Reader reader = new Reader(bytes);
+		int written = reader.readInt();
+		if (written != version)
+			throw new IllegalArgumentException("Menu state has version " + written + ", expected " + version);
+		return reader;
+	}
+
+	public static final class Writer {
+		private byte[] buffer = new byte[16];
+		private int length;
+
+		private Writer() {}
+
+		public Writer writeInt(int value) {
+			return writeLong(value);
+		}
+
+		public Writer writeLong(long value) {
+			return writeUnsigned((value << 1) ^ (value >> 63));
+		}
+
+		public Writer writeBoolean(boolean value) {
+			return writeUnsigned(value ? 1 : 0);
+		}
+
+		public Writer writeString(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeUnsigned(bytes.length);
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, buffer, length, bytes.length);
+			length += bytes.length;
+			return this;
+		}
+
+		private Writer writeUnsigned(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[length++] = (byte) value;
+			return this;
+		}
+
+		private void ensure(int extra) {
+			if (length + extra > buffer.length)
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+		}
+
+		/**
+		 * @return The encoded state
+		 */
+		@Override
+		public String toString() {
+			return encoder.encodeToString(Arrays.copyOf(buffer, length));
+		}
+	}
+
+	public static final class Reader {
+		private final byte[] bytes;
+		private int position;
+
+		private Reader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		public int readInt() {
+			long value = readLong();
+			if (value != (int) value)
+				throw new IllegalArgumentException("Menu state value out of int range " + value);
+			return (int) value;
+		}
+
+		public long readLong() {
+			long value = readUnsigned();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		public boolean readBoolean() {
+			return readUnsigned() != 0;
+		}
+
+		public String readString() {
+			long size = readUnsigned();
+			if (size > bytes.length - position)
+				throw new IllegalArgumentException("Malformed menu state");
+			String value = new String(bytes, position, (int) size, StandardCharsets.UTF_8);
+			position += (int) size;
+			return value;
+		}
+
+		/**
+		 * @return Whether more values follow, e.g. ones added in a later version
+		 */
+		public boolean hasMore() {
+			return position < bytes.length;
+		}
+
+		private long readUnsigned() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				if (position >= bytes.length)
+					throw new IllegalArgumentException("Malformed menu state");
+				byte b = bytes[position++];
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0)
+					return value;
+			}
+			throw new IllegalArgumentException("Malformed menu state");
+		}
+	}
+}
@@ -1,8 +1,10 @@
 package botcommons.menu.types;
 
 import botcommons.menu.IMenu;
+import botcommons.menu.MenuManager;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import net.dv8tion.jda.api.interactions.components.buttons.Button;
 
 public abstract class BaseMenu implements IMenu {
 	private String messageId;
@@ -22,4 +24,32 @@ public abstract class BaseMenu implements IMenu {
 	public void setMessageId(String messageId) {
 		this.messageId = messageId;
 	}
+
+	/**
+	 * @return The id the pressed button has in {@link #getButtons()}, without the menu namespace
+	 */
+	protected static String getComponent(ButtonInteractionEvent event) {
+		return MenuManager.getComponent(event.getComponentId());
+	}
+
+	/**
+	 * @return The state the pressed button was sent with, or null if it has none
+	 */
+	protected static String getState(ButtonInteractionEvent event) {
+		return MenuManager.getState(event.getComponentId());
+	}
+
+	/**
+	 * @return A button id carrying state from {@link botcommons.menu.MenuStateCodec}
+	 */
+	protected static String withState(String component, String state) {
+		return component + ':' + state;
+	}
+
+	/**
+	 * @return The buttons namespaced to the menu the event's button belongs to, for editing the message
+	 */
+	protected static Button[] namespaced(ButtonInteractionEvent event, Button... buttons) {
+		return MenuManager.namespaced(event, buttons);
+	}
 }
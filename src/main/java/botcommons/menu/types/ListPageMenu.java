@@ -0,0 +1,18 @@
+package botcommons.menu.types;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+
+import java.util.List;
+
+// A page menu over a list of pages, which is read again on every button press so changes show up right away
+public abstract class ListPageMenu extends PageMenu {
+	/**
+	 * @return Every page
+	 */
+	public abstract List<EmbedBuilder> getPageData();
+
+	@Override
+	public PageSource getPageSource() {
+		return PageSource.of(getPageData());
+	}
+}
@@ -1,5 +1,6 @@
 package botcommons.menu.types;
 
+import botcommons.menu.MenuStateCodec;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
@@ -7,21 +8,49 @@ import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
 import net.dv8tion.jda.api.interactions.components.buttons.ButtonStyle;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+// The current page travels in the buttons' custom ids, so a page menu keeps no state per message
 public abstract class PageMenu extends BaseMenu {
-	private int currentPage = 0;
+	private static final int STATE_VERSION = 1;
+	// How many rendered pages are kept, so paging back and forth around the current page renders nothing
+	private static final int WINDOW = 8;
+
+	private record Rendered(MessageEmbed embed, int size) {}
+
+	private final Map<Integer, Rendered> rendered = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Rendered> eldest) {
+			return size() > WINDOW;
+		}
+	};
+	// The source the rendered pages came from; they are dropped once getPageSource() returns another one
+	private PageSource renderedSource;
+
+	@Override
+	public boolean isStateless() {
+		return true;
+	}
 
 	@Override
 	public void handle(ButtonInteractionEvent event) {
-		String compId = event.getComponentId();
+		String compId = getComponent(event);
 
-		List<MessageEmbed> pages = getPages();
+		PageSource source = getPageSource();
+		int size = source.size();
+		if (size == 0) {
+			event.deferEdit().queue();
+			return;
+		}
+		int currentPage = Math.min(readPage(getState(event)), size - 1);
 
 		// If there's only one page, replace buttons with a single "end" button and return
-		if (pages.size() == 1 && !compId.equalsIgnoreCase("end")) {
-			event.editMessageEmbeds(pages.get(0))
-					.setActionRow(Button.of(ButtonStyle.DANGER, "end", Emoji.fromUnicode("❌")))
+		if (size == 1 && !compId.equalsIgnoreCase("end")) {
+			event.editMessageEmbeds(getPage(source, 0))
+					.setActionRow(namespaced(event, Button.of(ButtonStyle.DANGER, "end", Emoji.fromUnicode("❌"))))
 					.queue();
 			return;
 		}
@@ -31,11 +60,11 @@ public abstract class PageMenu extends BaseMenu {
 				if (currentPage > 0) {
 					currentPage--;
 				} else {
-					currentPage = pages.size() - 1;
+					currentPage = size - 1;
 				}
 			}
 			case "right" -> {
-				if (currentPage < pages.size() - 1) {
+				if (currentPage < size - 1) {
 					currentPage++;
 				} else {
 					currentPage = 0;
@@ -47,31 +76,102 @@ public abstract class PageMenu extends BaseMenu {
 			}
 		}
 
-		// single edit/ack for the interaction
-		event.editMessageEmbeds(pages.get(currentPage)).queue();
+		// single edit/ack for the interaction, with buttons carrying the new page
+		event.editMessageEmbeds(getPage(source, currentPage)).setActionRow(namespaced(event, getButtons(currentPage))).queue();
+	}
+
+	// Buttons sent before state was encoded, or with an older layout, start at the first page
+	private static int readPage(String state) {
+		if (state == null)
+			return 0;
+		try {
+			return Math.max(0, MenuStateCodec.reader(state, STATE_VERSION).readInt());
+		} catch (IllegalArgumentException e) {
+			return 0;
+		}
 	}
 
-	public abstract List<EmbedBuilder> getPageData();
+	/**
+	 * @return The pages, rendered one at a time. Called on every button press, so it should be cheap. Rendered
+	 * pages are only reused while the same source is returned, so returning a new source whenever the data
+	 * changed keeps pages current; a source that is no longer returned is closed. Menus with a list of pages
+	 * extend {@link ListPageMenu} instead.
+	 */
+	public abstract PageSource getPageSource();
 
 	public final List<MessageEmbed> getPages() {
-		for (int i = 0; i < getPageData().size(); i++) {
-			EmbedBuilder embedBuilder = getPageData().get(i);
-			embedBuilder.setFooter("Page " + (i + 1) + "/" + getPageData().size());
+		PageSource source = getPageSource();
+		int size = source.size();
+		List<MessageEmbed> pages = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			pages.add(footer(source.render(i), i, size));
+		synchronized (rendered) {
+			if (source == renderedSource)
+				return pages;
 		}
+		source.close();
+		return pages;
+	}
 
-		return getPageData().stream().map(EmbedBuilder::build).toList();
+	/**
+	 * Drops the rendered pages kept for this menu and closes their source, after the data behind them changed
+	 * while the same source is still returned.
+	 */
+	public void invalidatePages() {
+		PageSource source;
+		synchronized (rendered) {
+			rendered.clear();
+			source = renderedSource;
+			renderedSource = null;
+		}
+		if (source != null)
+			source.close();
+	}
+
+	// The page with its footer, from the window of recently rendered pages if it is still there
+	private MessageEmbed getPage(PageSource source, int index) {
+		int size = source.size();
+		PageSource replaced = null;
+		synchronized (rendered) {
+			if (source != renderedSource) {
+				rendered.clear();
+				replaced = renderedSource;
+				renderedSource = source;
+			}
+			Rendered page = rendered.get(index);
+			if (page != null && page.size == size)
+				return page.embed;
+		}
+		if (replaced != null)
+			replaced.close();
+		MessageEmbed embed = footer(source.render(index), index, size);
+		synchronized (rendered) {
+			if (source == renderedSource)
+				rendered.put(index, new Rendered(embed, size));
+		}
+		return embed;
+	}
+
+	private static MessageEmbed footer(EmbedBuilder page, int index, int size) {
+		// A copy, so sources handing out the same builders are not changed
+		return new EmbedBuilder(page).setFooter("Page " + (index + 1) + "/" + size).build();
 	}
 
 	@Override
 	public MessageEmbed build() {
-		return getPages().get(0);
+		return getPage(getPageSource(), 0);
 	}
 
 	@Override
 	public Button[] getButtons() {
+		return getButtons(0);
+	}
+
+	private Button[] getButtons(int page) {
+		String state = MenuStateCodec.writer(STATE_VERSION).writeInt(page).toString();
 		return new Button[]{
-				Button.of(ButtonStyle.PRIMARY, "left", Emoji.fromUnicode("⬅️")),
-				Button.of(ButtonStyle.SECONDARY, "right", Emoji.fromUnicode("➡️")),
+				Button.of(ButtonStyle.PRIMARY, withState("left", state), Emoji.fromUnicode("⬅️")),
+				Button.of(ButtonStyle.SECONDARY, withState("right", state), Emoji.fromUnicode("➡️")),
 		};
 	}
 }
@@ -0,0 +1,102 @@
+package botcommons.menu.types;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The pages of a {@link PageMenu}, rendered one at a time. Only the page being shown is rendered, so a menu can
+ * page through large result sets without building every page on every click.
+ */
+@SuppressWarnings("unused")
+public interface PageSource extends AutoCloseable {
+	/**
+	 * @return The number of pages
+	 */
+	int size();
+
+	/**
+	 * @return A new builder for the page, without the page footer, which the menu adds
+	 */
+	EmbedBuilder render(int index);
+
+	/**
+	 * Releases what the source holds open. Called by the menu once it stopped using the source.
+	 */
+	@Override
+	default void close() {}
+
+	static PageSource of(List<EmbedBuilder> pages) {
+		return of(pages.size(), pages::get);
+	}
+
+	static PageSource of(int size, IntFunction<EmbedBuilder> render) {
+		return new PageSource() {
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public EmbedBuilder render(int index) {
+				return render.apply(index);
+			}
+		};
+	}
+
+	/**
+	 * Reads pages from a stream, e.g. over a database result. The stream is kept open between pages and only
+	 * reopened when an earlier page is requested; it is closed when it is reopened, when it ran out, and when the
+	 * source is closed.
+	 *
+	 * @param pages Opens a new stream starting at the first page
+	 */
+	static PageSource streaming(int size, Supplier<? extends Stream<EmbedBuilder>> pages) {
+		return new PageSource() {
+			private Stream<EmbedBuilder> stream;
+			private Iterator<EmbedBuilder> iterator;
+			private int position;
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public synchronized EmbedBuilder render(int index) {
+				if (index < 0 || index >= size)
+					throw new IndexOutOfBoundsException("Page " + index + " of " + size);
+				if (stream == null || index < position) {
+					close();
+					stream = pages.get();
+					iterator = stream.iterator();
+					position = 0;
+				}
+				try {
+					for (; position < index; position++)
+						iterator.next();
+					position++;
+					return iterator.next();
+				} catch (NoSuchElementException e) {
+					close();
+					throw new IndexOutOfBoundsException("Stream ended before page " + index + " of " + size);
+				}
+			}
+
+			@Override
+			public synchronized void close() {
+				if (stream == null)
+					return;
+				Stream<EmbedBuilder> open = stream;
+				stream = null;
+				iterator = null;
+				open.close();
+			}
+		};
+	}
+}
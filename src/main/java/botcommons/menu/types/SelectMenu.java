@@ -1,5 +1,6 @@
 package botcommons.menu.types;
 
+import botcommons.menu.MenuStateCodec;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
@@ -25,16 +26,23 @@ public abstract class SelectMenu extends BaseMenu {
 	}};
 
 
+	private static final int STATE_VERSION = 1;
+
+	@Override
+	public boolean isStateless() {
+		return true;
+	}
+
 	@Override
 	public void handle(ButtonInteractionEvent event) {
 		// Do not acknowledge here unconditionally. Actions should acknowledge/reply if they need to.
-		String[] parts = event.getComponentId().split("_");
-		if (parts.length < 2) return;
+		String state = getState(event);
+		if (state == null || !getComponent(event).equals("select")) return;
 
 		int index;
 		try {
-			index = Integer.parseInt(parts[1]);
-		} catch (NumberFormatException e) {
+			index = MenuStateCodec.reader(state, STATE_VERSION).readInt();
+		} catch (IllegalArgumentException e) {
 			return;
 		}
 
@@ -66,7 +74,8 @@ public abstract class SelectMenu extends BaseMenu {
 		int i = 0;
 
 		for (Option option : getOptions()) {
-			buttons[i] = Button.secondary("select_" +i, numberEmojis.get(i + 1) + " " + option.name);
+			String state = MenuStateCodec.writer(STATE_VERSION).writeInt(i).toString();
+			buttons[i] = Button.secondary(withState("select", state), numberEmojis.get(i + 1) + " " + option.name);
 			i++;
 		}
 
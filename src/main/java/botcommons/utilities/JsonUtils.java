@@ -15,6 +15,7 @@ import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.Map;
 
 public class JsonUtils {
 	private static final Gson GSON = new GsonBuilder()
@@ -35,7 +36,7 @@ public class JsonUtils {
 			.create();
 
 
-	public static <T, V> void createCache(HashMap<T, V> map, String name) {
+	public static <T, V> void createCache(Map<T, V> map, String name) {
 		File file = StringUtilities.getAssetPath(Path.of("cache/",name+".json")).toFile();
 		if (file.exists()) return;
 		try (FileWriter writer = new FileWriter(file)) {
@@ -46,7 +47,23 @@ public class JsonUtils {
 		}
 	}
 
+	/**
+	 * @deprecated Kept for callers compiled against the {@code HashMap} signature, use {@link #createCache(Map, String)}
+	 */
+	@Deprecated
+	public static <T, V> void createCache(HashMap<T, V> map, String name) {
+		createCache((Map<T, V>) map, name);
+	}
+
+	/**
+	 * @deprecated Kept for callers compiled against the {@code HashMap} signature, use {@link #updateCache(Map, String)}
+	 */
+	@Deprecated
 	public static void updateCache(HashMap<?, ?> map, String name) {
+		updateCache((Map<?, ?>) map, name);
+	}
+
+	public static void updateCache(Map<?, ?> map, String name) {
 		Logger logger = LoggerFactory.getLogger(JsonUtils.class);
 		File file = StringUtilities.getAssetPath(Path.of("cache/", name + ".json")).toFile();
 		HashMap<Object, Object> existingData = new HashMap<>();
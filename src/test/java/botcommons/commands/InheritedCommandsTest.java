@@ -0,0 +1,51 @@
+package botcommons.commands;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InheritedCommandsTest {
+	private static final List<Object> ran = new ArrayList<>();
+
+	public abstract static class Player {
+		@Command(name = "play", help = "Plays")
+		public void play(GenericCommandEvent event) {
+			ran.add(this);
+		}
+	}
+
+	@CommandHolder(group = "alpha")
+	public static class AlphaPlayer extends Player {
+	}
+
+	@CommandHolder(group = "beta")
+	public static class BetaPlayer extends Player {
+	}
+
+	@Test
+	void holdersSharingABaseGetTheirOwnCommands() throws Throwable {
+		CommandManager.addCommands(AlphaPlayer.class, BetaPlayer.class);
+		CommandInfo alpha = CommandManager.getCommandInfo("alpha play");
+		CommandInfo beta = CommandManager.getCommandInfo("beta play");
+
+		assertNotSame(alpha, beta);
+		assertEquals("alpha play", alpha.fullName);
+		assertEquals("beta play", beta.fullName);
+		assertSame(alpha.method, beta.method);
+
+		alpha.invoker.invoke(null);
+		beta.invoker.invoke(null);
+		assertInstanceOf(AlphaPlayer.class, ran.get(0));
+		assertInstanceOf(BetaPlayer.class, ran.get(1));
+	}
+
+	@Test
+	void descriptorsAreKeyedByHolder() throws NoSuchMethodException {
+		var method = Player.class.getMethod("play", GenericCommandEvent.class);
+		assertSame(CommandInfo.from(AlphaPlayer.class, method), CommandInfo.from(AlphaPlayer.class, method));
+		assertNotSame(CommandInfo.from(AlphaPlayer.class, method), CommandInfo.from(BetaPlayer.class, method));
+	}
+}
@@ -0,0 +1,110 @@
+package botcommons.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedWheelTimerTest {
+	// Generous, so a loaded machine does not fail the upper bounds
+	private static final long SLACK_MILLIS = 500;
+
+	@Test
+	void rejectsInvalidSettings() {
+		assertThrows(IllegalArgumentException.class, () -> new HashedWheelTimer("test", Duration.ZERO, 8));
+		assertThrows(IllegalArgumentException.class, () -> new HashedWheelTimer("test", Duration.ofMillis(10), 0));
+	}
+
+	@Test
+	void roundsDelayUpToTheNextTick() throws InterruptedException {
+		HashedWheelTimer timer = new HashedWheelTimer("test-rounding", Duration.ofMillis(50), 8);
+		long delay = TimeUnit.MILLISECONDS.toNanos(120);
+		AtomicLong fired = new AtomicLong();
+		CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		timer.schedule(() -> {
+			fired.set(System.nanoTime());
+			latch.countDown();
+		}, delay, TimeUnit.NANOSECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		long elapsed = fired.get() - start;
+		assertTrue(elapsed >= delay, "fired early after " + elapsed + "ns");
+		assertTrue(elapsed < delay + TimeUnit.MILLISECONDS.toNanos(50 + SLACK_MILLIS), "fired late after " + elapsed + "ns");
+	}
+
+	@Test
+	void zeroDelayFiresOnTheNextTick() throws InterruptedException {
+		HashedWheelTimer timer = new HashedWheelTimer("test-zero", Duration.ofMillis(10), 8);
+		CountDownLatch latch = new CountDownLatch(1);
+		timer.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(SLACK_MILLIS, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	void cancelBeforeTransferNeverRuns() throws InterruptedException {
+		// A long tick keeps the timeout in the pending queue while it is cancelled
+		HashedWheelTimer timer = new HashedWheelTimer("test-cancel", Duration.ofMillis(200), 8);
+		AtomicBoolean ran = new AtomicBoolean();
+		HashedWheelTimer.Timeout timeout = timer.schedule(() -> ran.set(true), 0, TimeUnit.MILLISECONDS);
+
+		assertTrue(timeout.cancel());
+		assertFalse(timeout.cancel());
+
+		// A later timeout in the same slot proves the wheel moved past the cancelled one
+		CountDownLatch latch = new CountDownLatch(1);
+		timer.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertFalse(ran.get());
+	}
+
+	@Test
+	void cancelAfterExpiryFails() throws InterruptedException {
+		HashedWheelTimer timer = new HashedWheelTimer("test-expired", Duration.ofMillis(10), 8);
+		CountDownLatch latch = new CountDownLatch(1);
+		HashedWheelTimer.Timeout timeout = timer.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(SLACK_MILLIS, TimeUnit.MILLISECONDS));
+		assertFalse(timeout.cancel());
+	}
+
+	@Test
+	void delaysLongerThanTheWheelWaitForTheirRound() throws InterruptedException {
+		// Four slots of 10ms cover 40ms, so a 130ms timeout passes its slot three times before it is due
+		HashedWheelTimer timer = new HashedWheelTimer("test-rounds", Duration.ofMillis(10), 4);
+		long delay = TimeUnit.MILLISECONDS.toNanos(130);
+		AtomicLong fired = new AtomicLong();
+		CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		timer.schedule(() -> {
+			fired.set(System.nanoTime());
+			latch.countDown();
+		}, delay, TimeUnit.NANOSECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		long elapsed = fired.get() - start;
+		assertTrue(elapsed >= delay, "fired early after " + elapsed + "ns");
+		assertTrue(elapsed < delay + TimeUnit.MILLISECONDS.toNanos(10 + SLACK_MILLIS), "fired late after " + elapsed + "ns");
+	}
+
+	@Test
+	void cancelledTimeoutInALaterRoundNeverRuns() throws InterruptedException {
+		HashedWheelTimer timer = new HashedWheelTimer("test-rounds-cancel", Duration.ofMillis(10), 4);
+		AtomicBoolean ran = new AtomicBoolean();
+		HashedWheelTimer.Timeout timeout = timer.schedule(() -> ran.set(true), 100, TimeUnit.MILLISECONDS);
+		CountDownLatch latch = new CountDownLatch(1);
+		timer.schedule(latch::countDown, 200, TimeUnit.MILLISECONDS);
+
+		// Let the timeout reach the wheel first, so cancelling unlinks it from its slot
+		Thread.sleep(30);
+		assertTrue(timeout.cancel());
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertFalse(ran.get());
+	}
+}
@@ -0,0 +1,82 @@
+package botcommons.menu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MenuStateCodecTest {
+	@Test
+	void roundTripsSignedValuesThroughZigzag() {
+		long[] longs = {0, 1, -1, 63, -64, 64, -65, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+		MenuStateCodec.Writer writer = MenuStateCodec.writer(1);
+		for (long value : longs)
+			writer.writeLong(value);
+		writer.writeInt(Integer.MIN_VALUE).writeInt(-7).writeBoolean(true).writeBoolean(false).writeString("héllo");
+
+		MenuStateCodec.Reader reader = MenuStateCodec.reader(writer.toString(), 1);
+		for (long value : longs)
+			assertEquals(value, reader.readLong());
+		assertEquals(Integer.MIN_VALUE, reader.readInt());
+		assertEquals(-7, reader.readInt());
+		assertTrue(reader.readBoolean());
+		assertFalse(reader.readBoolean());
+		assertEquals("héllo", reader.readString());
+		assertFalse(reader.hasMore());
+	}
+
+	@Test
+	void smallMagnitudesTakeOneByte() {
+		// Version 0 and one value, each a single varint byte, encode to three base64 characters
+		assertEquals(3, MenuStateCodec.writer(0).writeInt(-64).toString().length());
+		assertEquals(3, MenuStateCodec.writer(0).writeInt(63).toString().length());
+		assertEquals(4, MenuStateCodec.writer(0).writeInt(64).toString().length());
+	}
+
+	@Test
+	void extremeValuesFitTheVarintLength() {
+		// Version byte plus a ten byte varint for the widest zigzag value
+		String state = MenuStateCodec.writer(0).writeLong(Long.MIN_VALUE).toString();
+		assertEquals(15, state.length());
+		assertEquals(Long.MIN_VALUE, MenuStateCodec.reader(state, 0).readLong());
+	}
+
+	@Test
+	void encodedStateIsCustomIdSafe() {
+		String state = MenuStateCodec.writer(1).writeLong(-1).writeLong(Long.MAX_VALUE).writeString("a:b/c+d").toString();
+		assertTrue(state.matches("[A-Za-z0-9_-]*"), state);
+	}
+
+	@Test
+	void readIntRejectsValuesOutOfRange() {
+		String state = MenuStateCodec.writer(1).writeLong(Integer.MAX_VALUE + 1L).toString();
+		assertThrows(IllegalArgumentException.class, () -> MenuStateCodec.reader(state, 1).readInt());
+	}
+
+	@Test
+	void rejectsOtherVersions() {
+		String state = MenuStateCodec.writer(1).writeInt(5).toString();
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> MenuStateCodec.reader(state, 2));
+		assertTrue(e.getMessage().contains("version 1"), e.getMessage());
+	}
+
+	@Test
+	void rejectsMalformedState() {
+		assertThrows(IllegalArgumentException.class, () -> MenuStateCodec.reader("not base64!", 1));
+		// Reading past the end, a truncated string and an unterminated varint
+		assertThrows(IllegalArgumentException.class, () -> MenuStateCodec.reader(MenuStateCodec.writer(1).toString(), 1).readLong());
+		String truncated = MenuStateCodec.writer(1).writeString("abc").toString();
+		assertThrows(IllegalArgumentException.class, () -> MenuStateCodec.reader(truncated.substring(0, 3), 1).readString());
+		assertThrows(IllegalArgumentException.class, () -> MenuStateCodec.reader("AoA", 1).readLong());
+	}
+
+	@Test
+	void rejectsVarintsLongerThanTenBytes() {
+		// Version 1, then eleven continuation bytes
+		byte[] bytes = new byte[12];
+		bytes[0] = 2;
+		for (int i = 1; i < bytes.length; i++)
+			bytes[i] = (byte) 0x80;
+		String state = java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+		assertThrows(IllegalArgumentException.class, () -> MenuStateCodec.reader(state, 1).readLong());
+	}
+}
@@ -0,0 +1,57 @@
+package botcommons.menu.types;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageSourceTest {
+	private final AtomicInteger opened = new AtomicInteger();
+	private final AtomicInteger closed = new AtomicInteger();
+
+	private Stream<EmbedBuilder> pages() {
+		opened.incrementAndGet();
+		return IntStream.range(0, 5).mapToObj(i -> new EmbedBuilder().setTitle("Page " + i)).onClose(closed::incrementAndGet);
+	}
+
+	@Test
+	void streamingKeepsTheStreamOpenWhilePagingForward() {
+		PageSource source = PageSource.streaming(5, this::pages);
+		assertEquals("Page 0", source.render(0).build().getTitle());
+		assertEquals("Page 2", source.render(2).build().getTitle());
+		assertEquals(1, opened.get());
+		assertEquals(0, closed.get());
+	}
+
+	@Test
+	void streamingClosesTheStreamItReopens() {
+		PageSource source = PageSource.streaming(5, this::pages);
+		source.render(3);
+		assertEquals("Page 1", source.render(1).build().getTitle());
+		assertEquals(2, opened.get());
+		assertEquals(1, closed.get());
+	}
+
+	@Test
+	void streamingClosesOnCloseAndReopensAfterwards() {
+		PageSource source = PageSource.streaming(5, this::pages);
+		source.render(0);
+		source.close();
+		source.close();
+		assertEquals(1, closed.get());
+		assertEquals("Page 4", source.render(4).build().getTitle());
+		assertEquals(2, opened.get());
+	}
+
+	@Test
+	void streamingClosesAStreamThatEndsEarly() {
+		PageSource source = PageSource.streaming(8, this::pages);
+		assertThrows(IndexOutOfBoundsException.class, () -> source.render(6));
+		assertEquals(1, closed.get());
+		assertThrows(IndexOutOfBoundsException.class, () -> source.render(8));
+	}
+}